@@ -0,0 +1,484 @@
+package greenfoot;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A SpatialIndex that keeps actors in a dynamic bounding volume hierarchy of axis aligned boxes.
+ * Leaf boxes are fattened by a margin, so small moves don't change the tree. Unlike a uniform grid,
+ * this handles worlds with very uneven actor sizes well.
+ */
+class AABBTree implements SpatialIndex {
+
+    // The node bounds
+    private double[] _minX, _minY, _maxX, _maxY;
+
+    // The node parent (or next free node for free nodes), children and height (leaf is zero)
+    private int[] _parent, _child1, _child2, _height;
+
+    // The actor for each leaf node
+    private Actor[] _actors;
+
+    // The root node
+    private int _root = NULL_NODE;
+
+    // The first free node
+    private int _freeNode = NULL_NODE;
+
+    // A stack used to traverse tree in queries
+    private int[] _stack = new int[64];
+
+    // A reusable array for actor bounds rect
+    private double[] _boundsRect = new double[4];
+
+    // Constant for no node
+    private static final int NULL_NODE = -1;
+
+    // The margin added to actor bounds for leaf nodes
+    private static final double FAT_MARGIN = 8;
+
+    /**
+     * Constructor.
+     */
+    public AABBTree()
+    {
+        _minX = new double[0]; _minY = new double[0]; _maxX = new double[0]; _maxY = new double[0];
+        _parent = new int[0]; _child1 = new int[0]; _child2 = new int[0]; _height = new int[0];
+        _actors = new Actor[0];
+        growNodes(16);
+    }
+
+    /**
+     * Adds or updates given actor for its current bounds in world.
+     */
+    public void updateActor(Actor anActor)
+    {
+        // Get actor bounds
+        double[] bounds = _boundsRect;
+        anActor.getBoundsRectInWorld(bounds);
+        double minX = bounds[0], minY = bounds[1];
+        double maxX = bounds[2], maxY = bounds[3];
+
+        // If actor already in tree, just return if still inside (and not much smaller than) leaf bounds, otherwise remove leaf
+        int leaf = anActor._indexProxy;
+        if (leaf != NULL_NODE) {
+            boolean isInside = _minX[leaf] <= minX && _minY[leaf] <= minY && _maxX[leaf] >= maxX && _maxY[leaf] >= maxY;
+            double maxMargin = FAT_MARGIN * 4;
+            boolean isLoose = minX - _minX[leaf] > maxMargin || minY - _minY[leaf] > maxMargin ||
+                _maxX[leaf] - maxX > maxMargin || _maxY[leaf] - maxY > maxMargin;
+            if (isInside && !isLoose)
+                return;
+            removeLeaf(leaf);
+        }
+
+        // Otherwise create leaf
+        else {
+            leaf = allocateNode();
+            _actors[leaf] = anActor;
+            anActor._indexProxy = leaf;
+        }
+
+        // Set fat bounds and insert
+        _minX[leaf] = minX - FAT_MARGIN;
+        _minY[leaf] = minY - FAT_MARGIN;
+        _maxX[leaf] = maxX + FAT_MARGIN;
+        _maxY[leaf] = maxY + FAT_MARGIN;
+        insertLeaf(leaf);
+    }
+
+    /**
+     * Removes given actor.
+     */
+    public void removeActor(Actor anActor)
+    {
+        int leaf = anActor._indexProxy;
+        if (leaf == NULL_NODE)
+            return;
+        removeLeaf(leaf);
+        freeNode(leaf);
+        anActor._indexProxy = NULL_NODE;
+    }
+
+    /**
+     * Adds the actors in given layers with leaf bounds that overlap given rect to given list.
+     */
+    public void getActorsInRect(double aMinX, double aMinY, double aMaxX, double aMaxY, int aLayerMask, List<Actor> theActors)
+    {
+        if (_root == NULL_NODE)
+            return;
+
+        // Push root on stack
+        int[] stack = _stack;
+        int stackSize = 0;
+        stack[stackSize++] = _root;
+
+        // Pop nodes and if node overlaps rect, add actor (leaf) or push children
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (_maxX[node] < aMinX || _minX[node] > aMaxX || _maxY[node] < aMinY || _minY[node] > aMaxY)
+                continue;
+            if (isLeaf(node)) {
+                if ((_actors[node].getLayers() & aLayerMask) != 0)
+                    theActors.add(_actors[node]);
+            }
+            else {
+                if (stackSize + 2 > stack.length)
+                    stack = _stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[stackSize++] = _child1[node];
+                stack[stackSize++] = _child2[node];
+            }
+        }
+    }
+
+    /**
+     * Adds the actors in given layers with leaf bounds that contain given point to given list.
+     */
+    public void getActorsAtPoint(double aX, double aY, int aLayerMask, List<Actor> theActors)
+    {
+        getActorsInRect(aX, aY, aX, aY, aLayerMask, theActors);
+    }
+
+    /**
+     * Adds the actors in given layers with leaf bounds that overlap given line segment to given list.
+     */
+    public void getActorsOnSegment(double aX0, double aY0, double aX1, double aY1, int aLayerMask, List<Actor> theActors)
+    {
+        if (_root == NULL_NODE)
+            return;
+
+        // Push root on stack
+        int[] stack = _stack;
+        int stackSize = 0;
+        stack[stackSize++] = _root;
+
+        // Pop nodes and if node overlaps segment, add actor (leaf) or push children
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (!isSegmentOverlappingNode(aX0, aY0, aX1, aY1, node))
+                continue;
+            if (isLeaf(node)) {
+                if ((_actors[node].getLayers() & aLayerMask) != 0)
+                    theActors.add(_actors[node]);
+            }
+            else {
+                if (stackSize + 2 > stack.length)
+                    stack = _stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[stackSize++] = _child1[node];
+                stack[stackSize++] = _child2[node];
+            }
+        }
+    }
+
+    /**
+     * Returns whether given line segment overlaps given node bounds (slab test).
+     */
+    private boolean isSegmentOverlappingNode(double aX0, double aY0, double aX1, double aY1, int aNode)
+    {
+        // Clip segment parameter range to node x slab, then y slab
+        double tMin = 0, tMax = 1;
+        double dx = aX1 - aX0, dy = aY1 - aY0;
+        if (dx == 0) {
+            if (aX0 < _minX[aNode] || aX0 > _maxX[aNode])
+                return false;
+        }
+        else {
+            double t1 = (_minX[aNode] - aX0) / dx, t2 = (_maxX[aNode] - aX0) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (aY0 < _minY[aNode] || aY0 > _maxY[aNode])
+                return false;
+        }
+        else {
+            double t1 = (_minY[aNode] - aY0) / dy, t2 = (_maxY[aNode] - aY0) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax;
+    }
+
+    /**
+     * Returns whether given node is leaf.
+     */
+    private boolean isLeaf(int aNode)  { return _child1[aNode] == NULL_NODE; }
+
+    /**
+     * Inserts given leaf node, using the sibling that adds the least perimeter to the tree.
+     */
+    private void insertLeaf(int aLeaf)
+    {
+        // If no root, just set root
+        if (_root == NULL_NODE) {
+            _root = aLeaf;
+            _parent[aLeaf] = NULL_NODE;
+            return;
+        }
+
+        // Find best sibling by descending tree while cost of pushing leaf down is less than pairing here
+        int node = _root;
+        while (!isLeaf(node)) {
+            int child1 = _child1[node];
+            int child2 = _child2[node];
+            double perimeter = getPerimeter(node);
+            double combinedPerimeter = getUnionPerimeter(node, aLeaf);
+
+            // Get cost of creating new parent for this node and leaf, and min cost of pushing leaf further down
+            double cost = 2 * combinedPerimeter;
+            double inheritanceCost = 2 * (combinedPerimeter - perimeter);
+            double cost1 = getDescendCost(child1, aLeaf) + inheritanceCost;
+            double cost2 = getDescendCost(child2, aLeaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2)
+                break;
+            node = cost1 < cost2 ? child1 : child2;
+        }
+
+        // Create new parent for sibling and leaf
+        int sibling = node;
+        int oldParent = _parent[sibling];
+        int newParent = allocateNode();
+        _parent[newParent] = oldParent;
+        setUnionBounds(newParent, aLeaf, sibling);
+        _height[newParent] = _height[sibling] + 1;
+
+        // Replace sibling with new parent
+        if (oldParent != NULL_NODE) {
+            if (_child1[oldParent] == sibling)
+                _child1[oldParent] = newParent;
+            else _child2[oldParent] = newParent;
+        }
+        else _root = newParent;
+        _child1[newParent] = sibling;
+        _child2[newParent] = aLeaf;
+        _parent[sibling] = newParent;
+        _parent[aLeaf] = newParent;
+
+        // Walk back up the tree fixing heights and bounds
+        refitAncestors(_parent[aLeaf]);
+    }
+
+    /**
+     * Removes given leaf node (the leaf node is not freed).
+     */
+    private void removeLeaf(int aLeaf)
+    {
+        // If leaf is root, just clear root
+        if (aLeaf == _root) {
+            _root = NULL_NODE;
+            return;
+        }
+
+        // Get parent, grand parent and sibling
+        int parent = _parent[aLeaf];
+        int grandParent = _parent[parent];
+        int sibling = _child1[parent] == aLeaf ? _child2[parent] : _child1[parent];
+
+        // If grand parent, replace parent with sibling and fix ancestors
+        if (grandParent != NULL_NODE) {
+            if (_child1[grandParent] == parent)
+                _child1[grandParent] = sibling;
+            else _child2[grandParent] = sibling;
+            _parent[sibling] = grandParent;
+            freeNode(parent);
+            refitAncestors(grandParent);
+        }
+
+        // Otherwise, make sibling the root
+        else {
+            _root = sibling;
+            _parent[sibling] = NULL_NODE;
+            freeNode(parent);
+        }
+        _parent[aLeaf] = NULL_NODE;
+    }
+
+    /**
+     * Rebalances and resets heights and bounds of given node and its ancestors.
+     */
+    private void refitAncestors(int aNode)
+    {
+        int node = aNode;
+        while (node != NULL_NODE) {
+            node = balance(node);
+            int child1 = _child1[node];
+            int child2 = _child2[node];
+            _height[node] = 1 + Math.max(_height[child1], _height[child2]);
+            setUnionBounds(node, child1, child2);
+            node = _parent[node];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if given node is imbalanced. Returns the new root of the subtree.
+     */
+    private int balance(int nodeA)
+    {
+        if (isLeaf(nodeA) || _height[nodeA] < 2)
+            return nodeA;
+
+        int nodeB = _child1[nodeA];
+        int nodeC = _child2[nodeA];
+        int balance = _height[nodeC] - _height[nodeB];
+
+        // Rotate C up
+        if (balance > 1) {
+            int nodeF = _child1[nodeC];
+            int nodeG = _child2[nodeC];
+            replaceChildWithGrandChild(nodeA, nodeC);
+
+            // Move taller grand child up with C, shorter one to A
+            if (_height[nodeF] > _height[nodeG]) {
+                _child2[nodeC] = nodeF;
+                _child2[nodeA] = nodeG;
+                _parent[nodeG] = nodeA;
+            }
+            else {
+                _child2[nodeC] = nodeG;
+                _child2[nodeA] = nodeF;
+                _parent[nodeF] = nodeA;
+            }
+            refitNode(nodeA);
+            refitNode(nodeC);
+            return nodeC;
+        }
+
+        // Rotate B up
+        if (balance < -1) {
+            int nodeD = _child1[nodeB];
+            int nodeE = _child2[nodeB];
+            replaceChildWithGrandChild(nodeA, nodeB);
+
+            // Move taller grand child up with B, shorter one to A
+            if (_height[nodeD] > _height[nodeE]) {
+                _child2[nodeB] = nodeD;
+                _child1[nodeA] = nodeE;
+                _parent[nodeE] = nodeA;
+            }
+            else {
+                _child2[nodeB] = nodeE;
+                _child1[nodeA] = nodeD;
+                _parent[nodeD] = nodeA;
+            }
+            refitNode(nodeA);
+            refitNode(nodeB);
+            return nodeB;
+        }
+
+        // Return node
+        return nodeA;
+    }
+
+    /**
+     * Makes given child the parent of given node (child1 of child is set to node).
+     */
+    private void replaceChildWithGrandChild(int aNode, int aChild)
+    {
+        int parent = _parent[aNode];
+        _child1[aChild] = aNode;
+        _parent[aChild] = parent;
+        _parent[aNode] = aChild;
+        if (parent != NULL_NODE) {
+            if (_child1[parent] == aNode)
+                _child1[parent] = aChild;
+            else _child2[parent] = aChild;
+        }
+        else _root = aChild;
+    }
+
+    /**
+     * Resets the height and bounds of given node from its children.
+     */
+    private void refitNode(int aNode)
+    {
+        int child1 = _child1[aNode];
+        int child2 = _child2[aNode];
+        _height[aNode] = 1 + Math.max(_height[child1], _height[child2]);
+        setUnionBounds(aNode, child1, child2);
+    }
+
+    /**
+     * Returns the cost of descending into given node to insert given leaf.
+     */
+    private double getDescendCost(int aNode, int aLeaf)
+    {
+        if (isLeaf(aNode))
+            return getUnionPerimeter(aNode, aLeaf);
+        return getUnionPerimeter(aNode, aLeaf) - getPerimeter(aNode);
+    }
+
+    /**
+     * Returns the perimeter of given node bounds.
+     */
+    private double getPerimeter(int aNode)
+    {
+        return 2 * (_maxX[aNode] - _minX[aNode] + _maxY[aNode] - _minY[aNode]);
+    }
+
+    /**
+     * Returns the perimeter of the union of given nodes bounds.
+     */
+    private double getUnionPerimeter(int aNode1, int aNode2)
+    {
+        double width = Math.max(_maxX[aNode1], _maxX[aNode2]) - Math.min(_minX[aNode1], _minX[aNode2]);
+        double height = Math.max(_maxY[aNode1], _maxY[aNode2]) - Math.min(_minY[aNode1], _minY[aNode2]);
+        return 2 * (width + height);
+    }
+
+    /**
+     * Sets the bounds of given node to the union of the other given nodes bounds.
+     */
+    private void setUnionBounds(int aNode, int aNode1, int aNode2)
+    {
+        _minX[aNode] = Math.min(_minX[aNode1], _minX[aNode2]);
+        _minY[aNode] = Math.min(_minY[aNode1], _minY[aNode2]);
+        _maxX[aNode] = Math.max(_maxX[aNode1], _maxX[aNode2]);
+        _maxY[aNode] = Math.max(_maxY[aNode1], _maxY[aNode2]);
+    }
+
+    /**
+     * Returns a new node from free list (grows node arrays if needed).
+     */
+    private int allocateNode()
+    {
+        if (_freeNode == NULL_NODE)
+            growNodes(_parent.length * 2);
+
+        int node = _freeNode;
+        _freeNode = _parent[node];
+        _parent[node] = _child1[node] = _child2[node] = NULL_NODE;
+        _height[node] = 0;
+        return node;
+    }
+
+    /**
+     * Returns given node to free list.
+     */
+    private void freeNode(int aNode)
+    {
+        _parent[aNode] = _freeNode;
+        _child1[aNode] = _child2[aNode] = NULL_NODE;
+        _height[aNode] = -1;
+        _actors[aNode] = null;
+        _freeNode = aNode;
+    }
+
+    /**
+     * Grows node arrays to given capacity and adds new nodes to free list.
+     */
+    private void growNodes(int aCapacity)
+    {
+        int oldCapacity = _parent.length;
+        _minX = Arrays.copyOf(_minX, aCapacity);
+        _minY = Arrays.copyOf(_minY, aCapacity);
+        _maxX = Arrays.copyOf(_maxX, aCapacity);
+        _maxY = Arrays.copyOf(_maxY, aCapacity);
+        _parent = Arrays.copyOf(_parent, aCapacity);
+        _child1 = Arrays.copyOf(_child1, aCapacity);
+        _child2 = Arrays.copyOf(_child2, aCapacity);
+        _height = Arrays.copyOf(_height, aCapacity);
+        _actors = Arrays.copyOf(_actors, aCapacity);
+
+        // Link new nodes into free list
+        for (int i = aCapacity - 1; i >= oldCapacity; i--)
+            freeNode(i);
+    }
+}
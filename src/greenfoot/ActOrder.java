@@ -0,0 +1,131 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import snap.view.View;
+
+/**
+ * The act order set by World.setActOrder(): a bucket of actors for each act order class (in world order), plus a last
+ * bucket for actors of other classes. The bucket for each actor class is found once and actors are added to and
+ * removed from buckets as they are added to and removed from world, so an act cycle just walks the buckets.
+ */
+class ActOrder {
+
+    // The act order classes
+    private Class<?>[] _classes;
+
+    // The actors for each act order class, then the actors of other classes (each in world order)
+    private List<Actor>[] _buckets;
+
+    // The bucket index for actor classes
+    private Map<Class<?>, Integer> _bucketIndexes = new HashMap<>();
+
+    // The actors in act order (cached, null if actors added or removed since)
+    private Actor[] _actors;
+
+    /**
+     * Constructor for given act order classes and world actors (in world order).
+     */
+    public ActOrder(Class<?>[] theClasses, View[] theViews)
+    {
+        _classes = theClasses;
+        _buckets = new List[theClasses.length + 1];
+        for (int i = 0; i < _buckets.length; i++)
+            _buckets[i] = new ArrayList<>();
+        for (View view : theViews)
+            addActor(((ActorView) view)._actor);
+    }
+
+    /**
+     * Adds given actor (which must be the newest actor in world, so buckets stay in world order).
+     */
+    public void addActor(Actor anActor)
+    {
+        _buckets[getBucketIndex(anActor.getClass())].add(anActor);
+        _actors = null;
+    }
+
+    /**
+     * Removes given actor.
+     */
+    public void removeActor(Actor anActor)
+    {
+        List<Actor> bucket = _buckets[getBucketIndex(anActor.getClass())];
+        int index = Actor.getWorldOrderIndex(bucket, anActor._worldOrder);
+        if (index >= 0)
+            bucket.remove(index);
+        _actors = null;
+    }
+
+    /**
+     * Removes given actors (marked batch remove) with one pass over each bucket.
+     */
+    public void removeActors(List<Actor> theActors)
+    {
+        for (List<Actor> bucket : _buckets)
+            bucket.removeIf(actor -> actor._batchRemove);
+        _actors = null;
+    }
+
+    /**
+     * Returns the actors in act order (the array doesn't change when actors are added or removed).
+     */
+    public Actor[] getActors()
+    {
+        // If already set, just return
+        if (_actors != null) return _actors;
+
+        // Get buckets actors in bucket order
+        int actorCount = 0;
+        for (List<Actor> bucket : _buckets)
+            actorCount += bucket.size();
+        Actor[] actors = new Actor[actorCount];
+        int index = 0;
+        for (List<Actor> bucket : _buckets) {
+            for (int i = 0, iMax = bucket.size(); i < iMax; i++)
+                actors[index++] = bucket.get(i);
+        }
+
+        // Set and return
+        return _actors = actors;
+    }
+
+    /**
+     * Returns the bucket index for given actor class: the index of the first act order class found walking up from
+     * actor class through its superclasses (so the most specific class wins), or of the first act order interface it
+     * implements, or the last bucket if none.
+     */
+    private int getBucketIndex(Class<?> aClass)
+    {
+        // If already found, just return
+        Integer bucketIndex = _bucketIndexes.get(aClass);
+        if (bucketIndex != null)
+            return bucketIndex;
+
+        // Find bucket index and add
+        int index = findBucketIndex(aClass);
+        _bucketIndexes.put(aClass, index);
+        return index;
+    }
+
+    /**
+     * Finds the bucket index for given actor class.
+     */
+    private int findBucketIndex(Class<?> aClass)
+    {
+        // Iterate up class and superclasses and return index of first act order class found
+        for (Class<?> cls = aClass; cls != null; cls = cls.getSuperclass()) {
+            for (int i = 0; i < _classes.length; i++)
+                if (_classes[i] == cls)
+                    return i;
+        }
+
+        // Return index of first act order interface that class implements (or last bucket)
+        ActorType actorType = ActorType.get(aClass);
+        for (int i = 0; i < _classes.length; i++)
+            if (_classes[i].isInterface() && actorType.isInstanceOf(ActorType.get(_classes[i])))
+                return i;
+        return _classes.length;
+    }
+}
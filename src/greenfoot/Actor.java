@@ -3,7 +3,13 @@ import snap.geom.Point;
 import snap.geom.Rect;
 import snap.geom.Shape;
 import snap.util.MathUtils;
+import snap.view.View;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * An implementation of the GreenFoot Actor class using SnapKit.
@@ -14,7 +20,7 @@ public class Actor {
     // The actor view
     protected ActorView _actorView = new ActorView(this);
 
-    // The actor location
+    // The actor location (in world cells)
     private int _x, _y;
 
     // The greenfoot image
@@ -23,9 +29,106 @@ public class Actor {
     // The world
     protected World _world;
 
+    // The type of this actor class, used for fast class tests
+    final ActorType _actorType = ActorType.get(getClass());
+
+    // The order in which this actor was added to world (matches WorldView child order)
+    int _worldOrder;
+
+    // The cell range this actor occupies in the world spatial hash (-1 if not indexed)
+    int _indexCol0 = -1, _indexRow0 = -1, _indexCol1 = -1, _indexRow1 = -1;
+
+    // The last spatial hash query that visited this actor
+    int _indexMark;
+
+    // The layers this actor is stored in, in the world spatial hash
+    int _indexLayers;
+
+    // The spatial index tree node for this actor (-1 if not indexed)
+    int _indexProxy = -1;
+
+    // The world cell index bucket for this actor (CellIndex.NOT_INDEXED if not indexed)
+    int _cellIndex = CellIndex.NOT_INDEXED;
+
+    // The distance of this actor in the last distance sorted query (segment fraction or squared distance)
+    double _queryDistance;
+
+    // The last touching pairs sweep that visited this actor
+    int _sweepPass;
+
+    // The world query cache entries for this actor's queries (linked list)
+    QueryCache.Entry _queryCacheEntry;
+
+    // The touching pairs with this actor in world contact set (null if none yet)
+    List<ActorPair> _contacts;
+
+    // Whether actor changed since last world contact set update, and the last update that tested its pairs
+    boolean _contactChanged;
+    int _contactUpdate;
+
+    // Whether actor changed while parallel actors act (world index update is buffered until they finish)
+    boolean _parallelActChanged;
+
+    // Whether actor remove is buffered until the end of world act phase (actor doesn't act until then)
+    boolean _removePending;
+
+    // Whether actor is in a batch of actors being removed from world (world lists are compacted once per batch)
+    boolean _batchRemove;
+
+    // The cached actor bounds shape in world coords (null if location, rotation or image changed since computed)
+    private Shape _boundsInWorld;
+
+    // The cached rect that encloses actor view in world coords (min x, min y, max x, max y) and whether it needs update
+    private double[] _boundsRect = new double[4];
+    private boolean _boundsRectDirty = true;
+
+    // The cosine and sine of the current rotation
+    private double _rotationCos = 1, _rotationSin;
+
+    // Whether collision tests use the opaque pixels of actor image instead of actor bounds
+    private boolean _preciseCollision;
+
+    // The collider shape used for intersection tests
+    private Collider _collider = Collider.Box;
+
+    // The collision layers this actor is in (a bit for each layer)
+    private int _layers = 1;
+
+    // The collision layers of the actors that this actor's queries find (a bit for each layer)
+    private int _layerMask = ALL_LAYERS;
+
+    // The cached round collider segment and radius (created when needed) and whether it needs update
+    private double[] _colliderSegment;
+    private boolean _colliderSegmentDirty = true;
+
+    // The handler called with each touching actor at the start of act cycle (if world touching pairs enabled)
+    private Consumer<Actor> _contactHandler;
+
+    // The tags of this actor (in order added), and a bit for the id of each tag (both null if no tags)
+    private List<String> _tags;
+    private long[] _tagBits;
+
+    // The inset of actor bounds from actor view bounds for collision tests
+    private static final double BOUNDS_INSET = .5;
+
+    // Padding for rotated bounds rect, so rounding never makes it smaller than the transformed bounds shape
+    private static final double BOUNDS_RECT_PAD = 1e-6;
+
     // Shared image
     protected static GreenfootImage DEFAULT_ACTOR_IMAGE = new GreenfootImage(48, 48);
 
+    // A layer mask for all collision layers
+    public static final int ALL_LAYERS = -1;
+
+    // A comparator to sort actors in the order they were added to world
+    static final Comparator<Actor> WORLD_ORDER_COMPARATOR = Comparator.comparingInt(actor -> actor._worldOrder);
+
+    /**
+     * The collider shapes for intersection tests, centered on actor and sized to actor image (inset like bounds).
+     * A circle fits the image short side. A capsule is a rounded rect along the image long side.
+     */
+    public enum Collider { Box, Circle, Capsule }
+
     /**
      * Constructor.
      */
@@ -64,14 +167,87 @@ public class Actor {
     public int getHeight()  { return (int) _actorView.getHeight(); }
 
     /**
-     * Returns the actor bounds in world coords.
+     * Returns the actor bounds in world coords. The shape is cached until the actor moves, turns or changes image,
+     * so it should not be modified.
      */
     public Shape getBoundsInWorld()
     {
+        // If already set, just return
+        if (_boundsInWorld != null) return _boundsInWorld;
+
         // Get actor bounds in world coords
         Rect actorBounds = _actorView.getBoundsLocal();
-        actorBounds.inset(.5);
-        return _actorView.localToParent(actorBounds);
+        actorBounds.inset(BOUNDS_INSET);
+        return _boundsInWorld = _actorView.localToParent(actorBounds);
+    }
+
+    /**
+     * Sets given array to the min x, min y, max x and max y of the rect that encloses the actor view in world coords.
+     */
+    void getBoundsRectInWorld(double[] theBounds)
+    {
+        // If needed, update bounds rect
+        if (_boundsRectDirty) {
+            updateBoundsRect();
+            _boundsRectDirty = false;
+        }
+
+        // Copy bounds rect
+        theBounds[0] = _boundsRect[0];
+        theBounds[1] = _boundsRect[1];
+        theBounds[2] = _boundsRect[2];
+        theBounds[3] = _boundsRect[3];
+    }
+
+    /**
+     * Updates the rect that encloses the actor view in world coords.
+     */
+    private void updateBoundsRect()
+    {
+        // Get actor view size and center in world coords
+        double width = _actorView.getWidth();
+        double height = _actorView.getHeight();
+        double midX = _actorView.getX() + width / 2;
+        double midY = _actorView.getY() + height / 2;
+
+        // Get half size of rect (enclosing rotated view, if rotated)
+        double halfW = width / 2;
+        double halfH = height / 2;
+        if (_actorView.getRotate() != 0) {
+            double cos = Math.abs(_rotationCos);
+            double sin = Math.abs(_rotationSin);
+            halfW = (width * cos + height * sin) / 2 + BOUNDS_RECT_PAD;
+            halfH = (width * sin + height * cos) / 2 + BOUNDS_RECT_PAD;
+        }
+
+        // Set bounds
+        _boundsRect[0] = midX - halfW;
+        _boundsRect[1] = midY - halfH;
+        _boundsRect[2] = midX + halfW;
+        _boundsRect[3] = midY + halfH;
+    }
+
+    /**
+     * Called when actor location, rotation or image changes to clear cached bounds and notify world.
+     */
+    private void boundsChanged()
+    {
+        _boundsInWorld = null;
+        _boundsRectDirty = true;
+        _colliderSegmentDirty = true;
+        if (_world != null)
+            _world.actorBoundsChanged(this);
+    }
+
+    /**
+     * Called when actor rotation changes to update cached rotation cosine and sine.
+     */
+    private void rotationChanged()
+    {
+        double radians = Math.toRadians(_actorView.getRotate());
+        _rotationCos = Math.cos(radians);
+        _rotationSin = Math.sin(radians);
+        boundsChanged();
     }
 
     /**
@@ -79,20 +255,25 @@ public class Actor {
      */
     public void setLocation(int aX, int aY)
     {
-        int cellSize = _world != null ? _world.getCellSize() : 1;
-        int newX = aX * cellSize + cellSize / 2;
-        int newY = aY * cellSize + cellSize / 2;
+        int newX = aX;
+        int newY = aY;
 
         // If bounded, clamp to bounds
         if (_world != null && _world.isBounded()) {
-            newX = MathUtils.clamp(newX, 0, _world.getWidth() * cellSize - cellSize);
-            newY = MathUtils.clamp(newY, 0, _world.getHeight() * cellSize - cellSize);
+            newX = MathUtils.clamp(newX, 0, _world.getWidth() - 1);
+            newY = MathUtils.clamp(newY, 0, _world.getHeight() - 1);
         }
 
-        // Set View x/y
-        _actorView.setXY(newX - getWidth() / 2d, newY - getHeight() / 2d);
+        // Set View x/y to center view in cell
+        int cellSize = _world != null ? _world.getCellSize() : 1;
+        int midX = newX * cellSize + cellSize / 2;
+        int midY = newY * cellSize + cellSize / 2;
+        _actorView.setXY(midX - getWidth() / 2d, midY - getHeight() / 2d);
         _x = newX;
         _y = newY;
+
+        // Clear cached bounds and notify world
+        boundsChanged();
     }
 
     /**
@@ -108,17 +289,65 @@ public class Actor {
      */
     public void move(int aValue)
     {
-        double x = getX() + aValue * Math.cos(Math.toRadians(_actorView.getRotate()));
-        double y = getY() + aValue * Math.sin(Math.toRadians(_actorView.getRotate()));
+        double x = getX() + aValue * _rotationCos;
+        double y = getY() + aValue * _rotationSin;
         setLocation(x, y);
     }
 
+    /**
+     * Moves given distance in the current direction, stopping before the first actor of given class in the way.
+     * Returns the actor that stopped the move (or null). Uses actor bounds rects, so fast actors can't pass through
+     * thin actors between frames, and ignores actors that this actor already overlaps.
+     */
+    public Actor moveAndCollide(int aValue, Class<?> aClass)
+    {
+        int x = (int) Math.round(getX() + aValue * _rotationCos);
+        int y = (int) Math.round(getY() + aValue * _rotationSin);
+        return moveToAndCollide(x, y, aClass);
+    }
+
+    /**
+     * Moves toward given location, stopping before the first actor of given class in the way.
+     * Returns the actor that stopped the move (or null).
+     */
+    public Actor moveToAndCollide(int aX, int aY, Class<?> aClass)
+    {
+        // If not in world, just set location
+        if (_world == null) {
+            setLocation(aX, aY);
+            return null;
+        }
+
+        // If bounded, clamp to bounds
+        int newX = aX;
+        int newY = aY;
+        if (_world.isBounded()) {
+            newX = MathUtils.clamp(newX, 0, _world.getWidth() - 1);
+            newY = MathUtils.clamp(newY, 0, _world.getHeight() - 1);
+        }
+
+        // Get first actor hit by sweeping bounds along move - if none, just set location
+        int dx = newX - _x, dy = newY - _y;
+        int cellSize = _world.getCellSize();
+        Actor hitActor = _world.getActorHitBySweep(this, dx * cellSize, dy * cellSize, aClass);
+        if (hitActor == null) {
+            setLocation(newX, newY);
+            return hitActor;
+        }
+
+        // Move to last whole cell before contact (rounded toward start)
+        double hitFraction = hitActor._queryDistance;
+        setLocation(_x + (int) (dx * hitFraction), _y + (int) (dy * hitFraction));
+        return hitActor;
+    }
+
     /**
      * Turn.
      */
     public void turn(int aDeg)
     {
         _actorView.setRotate(_actorView.getRotate() + aDeg);
+        rotationChanged();
     }
 
     /**
@@ -148,6 +377,7 @@ public class Actor {
     public void setRotation(int aRotation)
     {
         _actorView.setRotate(aRotation);
+        rotationChanged();
     }
 
     /**
@@ -167,9 +397,9 @@ public class Actor {
         boolean updateLocation = _image != null;
 
         // Update image actor lists and set new image
-        if (_image != null) _image._actors.remove(this);
+        if (_image != null) _image.removeActor(this);
         _image = anImage;
-        if (_image != null) _image._actors.add(this);
+        if (_image != null) _image.addActor(this);
 
         // Update ActorView Image and Size
         if (_image != null) {
@@ -202,6 +432,164 @@ public class Actor {
         setLocation(getX(), getY());
     }
 
+    /**
+     * Called when the image is painted (if precise collision, the collision mask may change).
+     */
+    void imagePainted()
+    {
+        if (_preciseCollision && _world != null)
+            _world.actorCollisionChanged(this);
+    }
+
+    /**
+     * Returns whether collision tests use the opaque pixels of actor image instead of actor bounds.
+     */
+    public boolean isPreciseCollision()  { return _preciseCollision; }
+
+    /**
+     * Sets whether collision tests use the opaque pixels of actor image instead of actor bounds.
+     */
+    public void setPreciseCollision(boolean aValue)
+    {
+        if (aValue == _preciseCollision) return;
+        _preciseCollision = aValue;
+        if (_world != null)
+            _world.actorCollisionChanged(this);
+    }
+
+    /**
+     * Returns the collider shape used for intersection tests.
+     */
+    public Collider getCollider()  { return _collider; }
+
+    /**
+     * Sets the collider shape used for intersection tests.
+     */
+    public void setCollider(Collider aCollider)
+    {
+        Collider collider = aCollider != null ? aCollider : Collider.Box;
+        if (collider == _collider) return;
+        _collider = collider;
+        _colliderSegmentDirty = true;
+        if (_world != null)
+            _world.actorCollisionChanged(this);
+    }
+
+    /**
+     * Returns the collision layers this actor is in (a bit for each layer, default is layer 0).
+     */
+    public int getLayers()  { return _layers; }
+
+    /**
+     * Sets the collision layers this actor is in (a bit for each layer).
+     */
+    public void setLayers(int aValue)
+    {
+        if (aValue == _layers) return;
+        _layers = aValue;
+        if (_world != null)
+            _world.actorLayersChanged(this);
+    }
+
+    /**
+     * Returns the collision layers of the actors that this actor's queries find (default is all layers).
+     */
+    public int getLayerMask()  { return _layerMask; }
+
+    /**
+     * Sets the collision layers of the actors that this actor's queries find (a bit for each layer).
+     */
+    public void setLayerMask(int aValue)
+    {
+        if (aValue == _layerMask) return;
+        _layerMask = aValue;
+        if (_world != null)
+            _world.actorCollisionChanged(this);
+    }
+
+    /**
+     * Returns whether this actor's queries find given actor (given actor is in a layer of this actor's layer mask).
+     */
+    public boolean isLayerMatch(Actor anActor)  { return (_layerMask & anActor._layers) != 0; }
+
+    /**
+     * Returns the handler called with each touching actor at the start of act cycle.
+     */
+    public Consumer<Actor> getContactHandler()  { return _contactHandler; }
+
+    /**
+     * Sets a handler called with each touching actor at the start of act cycle (if world touching pairs enabled).
+     */
+    public void setContactHandler(Consumer<Actor> aHandler)  { _contactHandler = aHandler; }
+
+    /**
+     * Returns the tags of this actor (in the order added).
+     */
+    public List<String> getTags()
+    {
+        return _tags != null ? Collections.unmodifiableList(_tags) : Collections.emptyList();
+    }
+
+    /**
+     * Returns whether this actor has given tag.
+     */
+    public boolean hasTag(String aTag)
+    {
+        if (_tagBits == null) return false;
+        int tagId = TagIndex.findTagId(aTag);
+        return tagId >= 0 && hasTagId(tagId);
+    }
+
+    /**
+     * Returns whether this actor has the tag with given id.
+     */
+    boolean hasTagId(int aTagId)
+    {
+        int word = aTagId >> 6;
+        return _tagBits != null && word < _tagBits.length && (_tagBits[word] & (1L << aTagId)) != 0;
+    }
+
+    /**
+     * Adds given tag to this actor (like "burning" or "team2"), so world can find actors with tag.
+     */
+    public void addTag(String aTag)
+    {
+        // If already has tag, just return
+        int tagId = TagIndex.getTagId(aTag);
+        if (hasTagId(tagId)) return;
+
+        // Add tag and tag bit
+        if (_tags == null)
+            _tags = new ArrayList<>(2);
+        _tags.add(aTag);
+        int word = tagId >> 6;
+        if (_tagBits == null || word >= _tagBits.length)
+            _tagBits = _tagBits == null ? new long[word + 1] : Arrays.copyOf(_tagBits, word + 1);
+        _tagBits[word] |= 1L << tagId;
+
+        // Notify world
+        if (_world != null)
+            _world.actorTagAdded(this, aTag);
+    }
+
+    /**
+     * Removes given tag from this actor.
+     */
+    public void removeTag(String aTag)
+    {
+        // If doesn't have tag, just return
+        int tagId = TagIndex.findTagId(aTag);
+        if (tagId < 0 || !hasTagId(tagId)) return;
+
+        // Remove tag and tag bit
+        _tags.remove(aTag);
+        _tagBits[tagId >> 6] &= ~(1L << tagId);
+
+        // Notify world
+        if (_world != null)
+            _world.actorTagRemoved(this, aTag);
+    }
+
     /**
      * Returns the world.
      */
@@ -220,13 +608,29 @@ public class Actor {
         return _world.getIntersectingActorsForActorShapeAndClass(this, null, aClass);
     }
 
+    /**
+     * Returns intersecting Actors in given list (cleared first).
+     */
+    protected <T extends Actor> List<T> getIntersectingObjects(Class<T> aClass, List<T> aList)
+    {
+        return _world.getIntersectingActorsForActorShapeAndClass(this, null, aClass, aList);
+    }
+
+    /**
+     * Calls given consumer for each intersecting Actor.
+     */
+    protected <T extends Actor> void forEachIntersectingObject(Class<T> aClass, Consumer<? super T> aConsumer)
+    {
+        _world.forEachIntersectingActorForActorShapeAndClass(this, null, aClass, aConsumer);
+    }
+
     /**
      * Returns the neighbors to this object within a given distance.
      */
     public <T> List<T> getNeighbors(int aDist, boolean doDiagonal, Class<T> aClass)
     {
-        System.err.println("Actor.getNeighbors: Not impl");
-        return null;
+        failIfNotInWorld();
+        return _world.getNeighborsForActor(this, aDist, doDiagonal, aClass);
     }
 
     /**
@@ -234,24 +638,56 @@ public class Actor {
      */
     protected <T> List<T> getObjectsAtOffset(int aX, int aY, Class<T> aClass)
     {
+        return getObjectsAtOffset(aX, aY, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns peer actors at given offset from this actor's center in given list (cleared first).
+     */
+    protected <T> List<T> getObjectsAtOffset(int aX, int aY, Class<T> aClass, List<T> aList)
+    {
+        // If cell world, return actors with image covering center of offset cell location
+        if (_world.getCellSize() > 1)
+            return _world.getActorsInCell(this, _x + aX, _y + aY, aClass, aList);
+
+        // Return actors at offset point
         double cellSize = _world.getCellSize();
         double offsetX = _actorView.getWidth() / 2 + aX * cellSize;
         double offsetY = _actorView.getHeight() / 2 + aY * cellSize;
         Point offsetXYInWorld = _actorView.localToParent(offsetX, offsetY);
-        return _world.getActorsAt(this, offsetXYInWorld.x, offsetXYInWorld.y, aClass);
+        return _world.getActorsAt(this, offsetXYInWorld.x, offsetXYInWorld.y, aClass, aList);
     }
 
     /**
-     * Returns actors in given range.
+     * Returns actors with center within given radius (in cells) of this actor's center.
      */
     protected <T> List<T> getObjectsInRange(int aRadius, Class<T> aClass)
     {
-        double actorX = _actorView.getWidth() / 2;
-        double actorY = _actorView.getHeight() / 2;
-        double radius = aRadius * _world.getCellSize();
-        Rect rangeBounds = new Rect(actorX - radius / 2, actorY - radius / 2, radius, radius);
-        Shape rangeBoundsInWorld = _actorView.localToParent(rangeBounds);
-        return _world.getIntersectingActorsForActorShapeAndClass(this, rangeBoundsInWorld, aClass);
+        return getObjectsInRange(aRadius, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns actors with center within given radius (in cells) of this actor's center in given list (cleared first).
+     */
+    protected <T> List<T> getObjectsInRange(int aRadius, Class<T> aClass, List<T> aList)
+    {
+        return _world.getActorsInRange(this, aRadius, aClass, aList);
+    }
+
+    /**
+     * Returns actors with given tag and class (optional) with center within given radius (in cells) of this actor's center.
+     */
+    protected <T> List<T> getObjectsInRangeWithTag(int aRadius, String aTag, Class<T> aClass)
+    {
+        return _world.getActorsInRangeWithTag(this, aRadius, aTag, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns intersecting actors with given tag and class (optional).
+     */
+    protected <T> List<T> getIntersectingObjectsWithTag(String aTag, Class<T> aClass)
+    {
+        return _world.getIntersectingActorsWithTag(this, aTag, aClass, new ArrayList<>());
     }
 
     /**
@@ -267,6 +703,11 @@ public class Actor {
      */
     protected Actor getOneObjectAtOffset(int aX, int aY, Class<?> aClass)
     {
+        // If cell world, return first actor with image covering center of offset cell location
+        if (_world.getCellSize() > 1)
+            return (Actor) _world.getActorInCell(this, _x + aX, _y + aY, aClass);
+
+        // Return first actor at offset point
         double cellSize = _world.getCellSize();
         double offsetX = _actorView.getWidth() / 2 + aX * cellSize;
         double offsetY = _actorView.getHeight() / 2 + aY * cellSize;
@@ -274,6 +715,47 @@ public class Actor {
         return (Actor) _world.getActorAt(this, offsetXYInWorld.x, offsetXYInWorld.y, aClass);
     }
 
+    /**
+     * Returns the nearest actor of given class to this actor.
+     */
+    protected <T> T getNearestObject(Class<T> aClass)
+    {
+        return getNearestObject(Integer.MAX_VALUE, aClass);
+    }
+
+    /**
+     * Returns the nearest actor of given class within given distance (in cells) of this actor.
+     */
+    protected <T> T getNearestObject(int aMaxDist, Class<T> aClass)
+    {
+        return _world.getNearestActor(this, _x, _y, aMaxDist, aClass);
+    }
+
+    /**
+     * Returns up to given count of the nearest actors of given class within given distance (in cells) of this actor,
+     * nearest first.
+     */
+    protected <T> List<T> getNearestObjects(int aCount, int aMaxDist, Class<T> aClass)
+    {
+        return _world.getNearestActors(this, _x, _y, aCount, aMaxDist, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the first actor of given class hit by a line from this actor's location to given world location.
+     */
+    protected <T> T raycast(int aX, int aY, Class<T> aClass)
+    {
+        return _world.getActorHitBySegment(this, _x, _y, aX, aY, aClass);
+    }
+
+    /**
+     * Returns the actors of given class hit by a line from this actor's location to given world location, nearest first.
+     */
+    protected <T> List<T> raycastAll(int aX, int aY, Class<T> aClass)
+    {
+        return _world.getActorsHitBySegment(this, _x, _y, aX, aY, aClass, new ArrayList<>());
+    }
+
     /**
      * Returns whether this actor is touching any other objects of the given class.
      */
@@ -298,8 +780,7 @@ public class Actor {
     public boolean isAtEdge()
     {
         failIfNotInWorld();
-        int cellSize = _world.getCellSize();
-        return (_x <= 0 || _y <= 0 || _x >= _world.getWidth() * cellSize - cellSize || _y >= _world.getHeight() * cellSize - cellSize);
+        return (_x <= 0 || _y <= 0 || _x >= _world.getWidth() - 1 || _y >= _world.getHeight() - 1);
     }
 
     /**
@@ -312,9 +793,324 @@ public class Actor {
      */
     protected boolean intersects(Actor other)
     {
-        Shape thisShape = getBoundsInWorld();
-        Shape otherShape = other.getBoundsInWorld();
-        return thisShape.intersectsShape(otherShape);
+        return isBoundsIntersecting(other) && isMaskIntersecting(other);
+    }
+
+    /**
+     * Returns whether the bounds of this actor intersect the bounds of given actor in world coords (the same test as
+     * getBoundsInWorld().intersectsShape(), without creating shapes). Actors rotated by multiples of 90 degrees are
+     * compared as rects, others with the separating axis test for oriented boxes.
+     */
+    boolean isBoundsIntersecting(Actor other)
+    {
+        // If either actor has round collider, use round collider tests
+        if (_collider != Collider.Box || other._collider != Collider.Box)
+            return isColliderIntersecting(other);
+
+        // Get half sizes of bounds (inset like getBoundsInWorld) and vector between centers
+        double halfW1 = Math.max(_actorView.getWidth() / 2 - BOUNDS_INSET, 0);
+        double halfH1 = Math.max(_actorView.getHeight() / 2 - BOUNDS_INSET, 0);
+        double halfW2 = Math.max(other._actorView.getWidth() / 2 - BOUNDS_INSET, 0);
+        double halfH2 = Math.max(other._actorView.getHeight() / 2 - BOUNDS_INSET, 0);
+        double dx = other._actorView.getX() + other._actorView.getWidth() / 2 - _actorView.getX() - _actorView.getWidth() / 2;
+        double dy = other._actorView.getY() + other._actorView.getHeight() / 2 - _actorView.getY() - _actorView.getHeight() / 2;
+
+        // If both rotated by a multiple of 90 degrees, compare as rects (swapping sides if rotated by 90 or 270)
+        int rotation1 = getRotation(), rotation2 = other.getRotation();
+        if (rotation1 % 90 == 0 && rotation2 % 90 == 0) {
+            double extentX1 = rotation1 % 180 == 0 ? halfW1 : halfH1, extentY1 = rotation1 % 180 == 0 ? halfH1 : halfW1;
+            double extentX2 = rotation2 % 180 == 0 ? halfW2 : halfH2, extentY2 = rotation2 % 180 == 0 ? halfH2 : halfW2;
+            return Math.abs(dx) <= extentX1 + extentX2 && Math.abs(dy) <= extentY1 + extentY2;
+        }
+
+        // Get box axes from cached rotations
+        double cos1 = _rotationCos, sin1 = _rotationSin;
+        double cos2 = other._rotationCos, sin2 = other._rotationSin;
+
+        // Get cosines between axes of the two boxes (box 2 axes in box 1 coords)
+        double cosXX = Math.abs(cos1 * cos2 + sin1 * sin2), cosXY = Math.abs(sin1 * cos2 - cos1 * sin2);
+        double cosYX = cosXY, cosYY = cosXX;
+
+        // Test box 1 axes: boxes are separated if center distance on axis is more than sum of box projections on axis
+        double distX1 = dx * cos1 + dy * sin1, distY1 = dy * cos1 - dx * sin1;
+        if (Math.abs(distX1) > halfW1 + halfW2 * cosXX + halfH2 * cosXY)
+            return false;
+        if (Math.abs(distY1) > halfH1 + halfW2 * cosYX + halfH2 * cosYY)
+            return false;
+
+        // Test box 2 axes
+        double distX2 = dx * cos2 + dy * sin2, distY2 = dy * cos2 - dx * sin2;
+        if (Math.abs(distX2) > halfW2 + halfW1 * cosXX + halfH1 * cosYX)
+            return false;
+        return Math.abs(distY2) <= halfH2 + halfW1 * cosXY + halfH1 * cosYY;
+    }
+
+    /**
+     * Returns whether the collider of this actor intersects the collider of given actor, where at least one is round.
+     * Round colliders are a segment (a point for circle) with radius, so tests are distances to segments.
+     */
+    private boolean isColliderIntersecting(Actor other)
+    {
+        // If either actor is box, use box test
+        if (_collider == Collider.Box)
+            return other.isColliderIntersectingBox(this);
+        if (other._collider == Collider.Box)
+            return isColliderIntersectingBox(other);
+
+        // Return whether distance between collider segments is within sum of radii
+        double[] segment1 = getColliderSegment(), segment2 = other.getColliderSegment();
+        double distSquared = getSegmentDistanceSquared(segment1[0], segment1[1], segment1[2], segment1[3],
+            segment2[0], segment2[1], segment2[2], segment2[3]);
+        double radius = segment1[4] + segment2[4];
+        return distSquared <= radius * radius;
+    }
+
+    /**
+     * Returns whether the round collider of this actor intersects the box of given actor.
+     */
+    private boolean isColliderIntersectingBox(Actor aBoxActor)
+    {
+        // Get box half sizes and center
+        View boxView = aBoxActor._actorView;
+        double halfW = Math.max(boxView.getWidth() / 2 - BOUNDS_INSET, 0);
+        double halfH = Math.max(boxView.getHeight() / 2 - BOUNDS_INSET, 0);
+        double boxX = boxView.getX() + boxView.getWidth() / 2, boxY = boxView.getY() + boxView.getHeight() / 2;
+
+        // Get collider segment in box coords (relative to box center, rotated back by box rotation)
+        double[] segment = getColliderSegment();
+        double cos = aBoxActor._rotationCos, sin = aBoxActor._rotationSin;
+        double dx0 = segment[0] - boxX, dy0 = segment[1] - boxY, dx1 = segment[2] - boxX, dy1 = segment[3] - boxY;
+        double x0 = dx0 * cos + dy0 * sin, y0 = dy0 * cos - dx0 * sin;
+        double x1 = dx1 * cos + dy1 * sin, y1 = dy1 * cos - dx1 * sin;
+        double radius = segment[4];
+
+        // If segment end is in box, return true
+        if (Math.abs(x0) <= halfW && Math.abs(y0) <= halfH || Math.abs(x1) <= halfW && Math.abs(y1) <= halfH)
+            return true;
+
+        // If segment crosses box edge, return true
+        for (int i = 0; i < 4; i++) {
+            double cornerX0 = i == 0 || i == 3 ? -halfW : halfW, cornerY0 = i < 2 ? -halfH : halfH;
+            double cornerX1 = i == 0 || i == 1 ? halfW : -halfW, cornerY1 = i == 0 || i == 3 ? -halfH : halfH;
+            if (isSegmentsCrossing(x0, y0, x1, y1, cornerX0, cornerY0, cornerX1, cornerY1))
+                return true;
+        }
+
+        // Get nearest distance between segment and box (from segment ends to box, or box corners to segment)
+        double endX0 = Math.max(Math.abs(x0) - halfW, 0), endY0 = Math.max(Math.abs(y0) - halfH, 0);
+        double endX1 = Math.max(Math.abs(x1) - halfW, 0), endY1 = Math.max(Math.abs(y1) - halfH, 0);
+        double distSquared = Math.min(endX0 * endX0 + endY0 * endY0, endX1 * endX1 + endY1 * endY1);
+        for (int i = 0; i < 4; i++) {
+            double cornerX = i == 0 || i == 3 ? -halfW : halfW, cornerY = i < 2 ? -halfH : halfH;
+            distSquared = Math.min(distSquared, getPointSegmentDistanceSquared(cornerX, cornerY, x0, y0, x1, y1));
+        }
+
+        // Return whether distance is within radius
+        return distSquared <= radius * radius;
+    }
+
+    /**
+     * Returns whether given point in world coords is inside actor collider (always true for box).
+     * Should be called only after bounds are known to contain point.
+     */
+    boolean isColliderContaining(double aX, double aY)
+    {
+        if (_collider == Collider.Box)
+            return true;
+        double[] segment = getColliderSegment();
+        double distSquared = getPointSegmentDistanceSquared(aX, aY, segment[0], segment[1], segment[2], segment[3]);
+        return distSquared <= segment[4] * segment[4];
+    }
+
+    /**
+     * Returns the round collider segment in world coords and radius (x0, y0, x1, y1, radius) in a cached array.
+     */
+    private double[] getColliderSegment()
+    {
+        // If cached segment is current, just return
+        if (!_colliderSegmentDirty)
+            return _colliderSegment;
+
+        // Get collider radius (half short side) and half segment length (along long side)
+        double halfW = Math.max(_actorView.getWidth() / 2 - BOUNDS_INSET, 0);
+        double halfH = Math.max(_actorView.getHeight() / 2 - BOUNDS_INSET, 0);
+        double radius = Math.min(halfW, halfH);
+        double halfLength = _collider == Collider.Capsule ? Math.max(halfW, halfH) - radius : 0;
+
+        // Get segment half vector along long side in world coords
+        double halfX = halfW >= halfH ? halfLength * _rotationCos : -halfLength * _rotationSin;
+        double halfY = halfW >= halfH ? halfLength * _rotationSin : halfLength * _rotationCos;
+
+        // Set segment and radius
+        double midX = _actorView.getX() + _actorView.getWidth() / 2, midY = _actorView.getY() + _actorView.getHeight() / 2;
+        double[] segment = _colliderSegment != null ? _colliderSegment : (_colliderSegment = new double[5]);
+        segment[0] = midX - halfX;
+        segment[1] = midY - halfY;
+        segment[2] = midX + halfX;
+        segment[3] = midY + halfY;
+        segment[4] = radius;
+        _colliderSegmentDirty = false;
+        return segment;
+    }
+
+    /**
+     * Returns the squared distance between two line segments.
+     */
+    private static double getSegmentDistanceSquared(double ax0, double ay0, double ax1, double ay1, double bx0, double by0, double bx1, double by1)
+    {
+        // If segments cross, return zero
+        if (isSegmentsCrossing(ax0, ay0, ax1, ay1, bx0, by0, bx1, by1))
+            return 0;
+
+        // Otherwise return nearest distance from segment ends to other segment
+        double dist1 = getPointSegmentDistanceSquared(ax0, ay0, bx0, by0, bx1, by1);
+        double dist2 = getPointSegmentDistanceSquared(ax1, ay1, bx0, by0, bx1, by1);
+        double dist3 = getPointSegmentDistanceSquared(bx0, by0, ax0, ay0, ax1, ay1);
+        double dist4 = getPointSegmentDistanceSquared(bx1, by1, ax0, ay0, ax1, ay1);
+        return Math.min(Math.min(dist1, dist2), Math.min(dist3, dist4));
+    }
+
+    /**
+     * Returns whether two line segments cross (touching and collinear segments are found by end point distances).
+     */
+    private static boolean isSegmentsCrossing(double ax0, double ay0, double ax1, double ay1, double bx0, double by0, double bx1, double by1)
+    {
+        double side1 = (ax1 - ax0) * (by0 - ay0) - (ay1 - ay0) * (bx0 - ax0);
+        double side2 = (ax1 - ax0) * (by1 - ay0) - (ay1 - ay0) * (bx1 - ax0);
+        double side3 = (bx1 - bx0) * (ay0 - by0) - (by1 - by0) * (ax0 - bx0);
+        double side4 = (bx1 - bx0) * (ay1 - by0) - (by1 - by0) * (ax1 - bx0);
+        return (side1 > 0 && side2 < 0 || side1 < 0 && side2 > 0) && (side3 > 0 && side4 < 0 || side3 < 0 && side4 > 0);
+    }
+
+    /**
+     * Returns the squared distance from a point to a line segment.
+     */
+    private static double getPointSegmentDistanceSquared(double aX, double aY, double x0, double y0, double x1, double y1)
+    {
+        double dx = x1 - x0, dy = y1 - y0;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((aX - x0) * dx + (aY - y0) * dy) / lengthSquared : 0;
+        t = t < 0 ? 0 : t > 1 ? 1 : t;
+        double nearX = x0 + t * dx - aX, nearY = y0 + t * dy - aY;
+        return nearX * nearX + nearY * nearY;
+    }
+
+    /**
+     * Returns whether the collision mask of this actor intersects the collision mask of given actor (always true if
+     * neither actor uses precise collision). Should be called only after bounds are known to intersect.
+     */
+    boolean isMaskIntersecting(Actor other)
+    {
+        // If neither actor is precise, just return true
+        if (!_preciseCollision && !other._preciseCollision)
+            return true;
+
+        // Get masks (a non-precise actor gets a solid mask) and mask origins
+        CollisionMask thisMask = getCollisionMask();
+        CollisionMask otherMask = other.getCollisionMask();
+        double thisX = _actorView.getX() + (_actorView.getWidth() - thisMask.getWidth()) / 2;
+        double thisY = _actorView.getY() + (_actorView.getHeight() - thisMask.getHeight()) / 2;
+        double otherX = other._actorView.getX() + (other._actorView.getWidth() - otherMask.getWidth()) / 2;
+        double otherY = other._actorView.getY() + (other._actorView.getHeight() - otherMask.getHeight()) / 2;
+
+        // Return whether masks intersect
+        int dx = (int) Math.round(otherX - thisX);
+        int dy = (int) Math.round(otherY - thisY);
+        return thisMask.intersects(otherMask, dx, dy);
+    }
+
+    /**
+     * Returns whether given point in world coords hits an opaque pixel of this actor (always true if not precise).
+     * Should be called only after bounds are known to contain point.
+     */
+    boolean isMaskContaining(double aX, double aY)
+    {
+        // If not precise, just return true
+        if (!_preciseCollision)
+            return true;
+
+        // Get mask and return whether mask pixel at point is set
+        CollisionMask mask = getCollisionMask();
+        double maskX = _actorView.getX() + (_actorView.getWidth() - mask.getWidth()) / 2;
+        double maskY = _actorView.getY() + (_actorView.getHeight() - mask.getHeight()) / 2;
+        return mask.isSet((int) Math.floor(aX - maskX), (int) Math.floor(aY - maskY));
+    }
+
+    /**
+     * Returns the fraction along given line segment in world coords where it first hits this actor, or -1 if it
+     * misses. If precise, the segment is stepped a pixel at a time through the actor bounds to find an opaque pixel.
+     */
+    double getSegmentHitFraction(double aX0, double aY0, double aX1, double aY1)
+    {
+        // Get segment points relative to actor center, rotated into actor coords
+        double halfW = _actorView.getWidth() / 2, halfH = _actorView.getHeight() / 2;
+        double midX = _actorView.getX() + halfW, midY = _actorView.getY() + halfH;
+        double x0 = aX0 - midX, y0 = aY0 - midY, x1 = aX1 - midX, y1 = aY1 - midY;
+        double localX0 = x0 * _rotationCos + y0 * _rotationSin, localY0 = y0 * _rotationCos - x0 * _rotationSin;
+        double localX1 = x1 * _rotationCos + y1 * _rotationSin, localY1 = y1 * _rotationCos - x1 * _rotationSin;
+
+        // Clip segment parameter range to actor x slab, then y slab
+        double tMin = 0, tMax = 1;
+        double dx = localX1 - localX0, dy = localY1 - localY0;
+        if (dx == 0) {
+            if (localX0 < -halfW || localX0 > halfW)
+                return -1;
+        }
+        else {
+            double t1 = (-halfW - localX0) / dx, t2 = (halfW - localX0) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (localY0 < -halfH || localY0 > halfH)
+                return -1;
+        }
+        else {
+            double t1 = (-halfH - localY0) / dy, t2 = (halfH - localY0) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (tMin > tMax)
+            return -1;
+
+        // If not precise, return entry fraction
+        if (!_preciseCollision)
+            return tMin;
+
+        // Step through clipped segment a pixel at a time and return fraction at first opaque pixel
+        double segmentX = aX1 - aX0, segmentY = aY1 - aY0;
+        double length = Math.sqrt(segmentX * segmentX + segmentY * segmentY);
+        int stepCount = (int) Math.ceil((tMax - tMin) * length);
+        for (int i = 0; i <= stepCount; i++) {
+            double t = stepCount > 0 ? tMin + (tMax - tMin) * i / stepCount : tMin;
+            if (isMaskContaining(aX0 + segmentX * t, aY0 + segmentY * t))
+                return t;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the collision mask for current image and rotation (solid if not precise).
+     */
+    private CollisionMask getCollisionMask()
+    {
+        return _image.getCollisionMask(getRotation(), !_preciseCollision);
+    }
+
+    /**
+     * Updates the cached bounds rect, collider segment and (optionally) collision mask, so that intersection tests
+     * with other actors only read actor state, and can run on several threads at once until actor changes.
+     */
+    void updateCollisionCaches(boolean includeMask)
+    {
+        if (_boundsRectDirty) {
+            updateBoundsRect();
+            _boundsRectDirty = false;
+        }
+        if (_collider != Collider.Box)
+            getColliderSegment();
+        if (includeMask)
+            getCollisionMask();
     }
 
     /**
@@ -330,4 +1126,23 @@ public class Actor {
         if (_world == null)
             throw new IllegalStateException("Actor has not been added to the world");
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the index of actor with given world order in given actors list sorted in world order (or
+     * -(insertion index) - 1 if not found).
+     */
+    static int getWorldOrderIndex(List<Actor> theActors, int aWorldOrder)
+    {
+        int low = 0, high = theActors.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midOrder = theActors.get(mid)._worldOrder;
+            if (midOrder < aWorldOrder)
+                low = mid + 1;
+            else if (midOrder > aWorldOrder)
+                high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+}
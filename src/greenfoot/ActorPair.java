@@ -0,0 +1,84 @@
+package greenfoot;
+import java.util.Comparator;
+
+/**
+ * A pair of touching actors, as found by World once per act cycle (actor1 was added to world before actor2).
+ */
+public class ActorPair {
+
+    // The actors
+    private Actor _actor1, _actor2;
+
+    // The world contact set update in which actors began touching
+    int _beginUpdate;
+
+    // Whether actors ended touching (in world contact set)
+    boolean _ended;
+
+    // A comparator to sort pairs in world order (by actor1, then actor2)
+    static final Comparator<ActorPair> WORLD_ORDER_COMPARATOR = Comparator
+        .comparingInt((ActorPair pair) -> pair.getActor1()._worldOrder)
+        .thenComparingInt(pair -> pair.getActor2()._worldOrder);
+
+    /**
+     * Constructor for given actors.
+     */
+    public ActorPair(Actor anActor1, Actor anActor2)
+    {
+        _actor1 = anActor1;
+        _actor2 = anActor2;
+    }
+
+    /**
+     * Returns the first actor.
+     */
+    public Actor getActor1()  { return _actor1; }
+
+    /**
+     * Returns the second actor.
+     */
+    public Actor getActor2()  { return _actor2; }
+
+    /**
+     * Returns the first actor in pair that is an instance of given class (or null).
+     */
+    public <T> T getActor(Class<T> aClass)
+    {
+        ActorType type = ActorType.get(aClass);
+        if (_actor1._actorType.isInstanceOf(type))
+            return (T) _actor1;
+        if (_actor2._actorType.isInstanceOf(type))
+            return (T) _actor2;
+        return null;
+    }
+
+    /**
+     * Returns the other actor in pair for given actor.
+     */
+    public Actor getOther(Actor anActor)  { return anActor == _actor1 ? _actor2 : _actor1; }
+
+    /**
+     * Returns whether pair has an actor of each given class (or any actor, for null class).
+     */
+    public boolean isPairForClasses(Class<?> aClass1, Class<?> aClass2)
+    {
+        ActorType type1 = aClass1 != null ? ActorType.get(aClass1) : null;
+        ActorType type2 = aClass2 != null ? ActorType.get(aClass2) : null;
+        ActorType actorType1 = _actor1._actorType, actorType2 = _actor2._actorType;
+        boolean is1Class1 = type1 == null || actorType1.isInstanceOf(type1);
+        boolean is2Class2 = type2 == null || actorType2.isInstanceOf(type2);
+        if (is1Class1 && is2Class2)
+            return true;
+        boolean is2Class1 = type1 == null || actorType2.isInstanceOf(type1);
+        boolean is1Class2 = type2 == null || actorType1.isInstanceOf(type2);
+        return is2Class1 && is1Class2;
+    }
+
+    /**
+     * Standard toString implementation.
+     */
+    public String toString()
+    {
+        return "ActorPair { " + _actor1 + ", " + _actor2 + " }";
+    }
+}
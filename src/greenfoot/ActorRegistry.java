@@ -0,0 +1,248 @@
+package greenfoot;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of the actors in a World, keyed by concrete actor class.
+ * Lookups for a class resolve the concrete classes that are instances of it once and cache the result.
+ * Lookups can run at the same time (from parallel actors), as long as no actors are added or removed meanwhile.
+ */
+class ActorRegistry {
+
+    // The actors for each concrete actor class (in world order)
+    private Map<Class<?>, List<Actor>> _actorsByClass = new HashMap<>();
+
+    // The actor lists for concrete classes that are instances of a given lookup class (concurrent for parallel lookups)
+    private Map<Class<?>, List<List<Actor>>> _actorListsForClass = new ConcurrentHashMap<>();
+
+    // The number of actors in registry
+    private int _actorCount;
+
+    // The most actor lists merged by scanning all list heads for each actor (more lists are merged with a heap)
+    private static final int MAX_SCAN_MERGE_LISTS = 4;
+
+    /**
+     * Returns the number of actors.
+     */
+    public int getActorCount()  { return _actorCount; }
+
+    /**
+     * Returns the number of actors that are instances of given class.
+     */
+    public int getActorCount(Class<?> aClass)
+    {
+        List<List<Actor>> actorLists = getActorListsForClass(aClass);
+        int actorCount = 0;
+        for (int i = 0, iMax = actorLists.size(); i < iMax; i++)
+            actorCount += actorLists.get(i).size();
+        return actorCount;
+    }
+
+    /**
+     * Adds an actor.
+     */
+    public void addActor(Actor anActor)
+    {
+        // Get actor list for class (create and add to matching cached lookups if first actor of class)
+        Class<?> actorClass = anActor.getClass();
+        List<Actor> actorList = _actorsByClass.get(actorClass);
+        if (actorList == null) {
+            actorList = new ArrayList<>();
+            _actorsByClass.put(actorClass, actorList);
+            for (Map.Entry<Class<?>, List<List<Actor>>> entry : _actorListsForClass.entrySet()) {
+                if (entry.getKey().isAssignableFrom(actorClass))
+                    entry.getValue().add(actorList);
+            }
+        }
+
+        // Add actor
+        actorList.add(anActor);
+        _actorCount++;
+    }
+
+    /**
+     * Removes an actor.
+     */
+    public void removeActor(Actor anActor)
+    {
+        // Get actor list for class
+        List<Actor> actorList = _actorsByClass.get(anActor.getClass());
+        if (actorList == null)
+            return;
+
+        // Remove actor (by identity, in case actor class overrides equals)
+        for (int i = actorList.size() - 1; i >= 0; i--) {
+            if (actorList.get(i) == anActor) {
+                actorList.remove(i);
+                _actorCount--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes given actors (marked batch remove) with one pass over the actor list of each of their classes.
+     */
+    public void removeActors(List<Actor> theActors)
+    {
+        // Get classes of actors
+        Set<Class<?>> actorClasses = new HashSet<>();
+        for (Actor actor : theActors)
+            actorClasses.add(actor.getClass());
+
+        // Remove marked actors from actor list of each class
+        for (Class<?> actorClass : actorClasses) {
+            List<Actor> actorList = _actorsByClass.get(actorClass);
+            if (actorList == null)
+                continue;
+            int oldSize = actorList.size();
+            actorList.removeIf(actor -> actor._batchRemove);
+            _actorCount -= oldSize - actorList.size();
+        }
+    }
+
+    /**
+     * Returns the actors that are instances of given class (in world order).
+     */
+    public <T> List<T> getActors(Class<T> aClass)
+    {
+        List<Actor> actors = new ArrayList<>();
+        getActors(aClass, actors);
+        return (List<T>) actors;
+    }
+
+    /**
+     * Adds the actors that are instances of given class to given list (in world order).
+     */
+    public void getActors(Class<?> aClass, List<Actor> theActors)
+    {
+        // Get actor lists for class
+        List<List<Actor>> actorLists = getActorListsForClass(aClass);
+        int listCount = actorLists.size();
+
+        // Handle common cases of zero or one actor list
+        if (listCount == 0)
+            return;
+        if (listCount == 1) {
+            theActors.addAll(actorLists.get(0));
+            return;
+        }
+
+        // If many lists, merge with heap (so cost is O(n log k) instead of O(n k))
+        if (listCount > MAX_SCAN_MERGE_LISTS) {
+            mergeActorLists(actorLists, theActors);
+            return;
+        }
+
+        // Get total count and indexes of next actor in each list (local, so parallel lookups don't share them)
+        int actorCount = 0;
+        for (List<Actor> actorList : actorLists)
+            actorCount += actorList.size();
+        int[] nextIndexes = new int[listCount];
+
+        // Merge lists by taking the lowest world order actor from list heads until all actors added
+        for (int i = 0; i < actorCount; i++) {
+            int nextListIndex = -1;
+            Actor nextActor = null;
+            for (int j = 0; j < listCount; j++) {
+                List<Actor> actorList = actorLists.get(j);
+                if (nextIndexes[j] < actorList.size()) {
+                    Actor actor = actorList.get(nextIndexes[j]);
+                    if (nextActor == null || actor._worldOrder < nextActor._worldOrder) {
+                        nextActor = actor;
+                        nextListIndex = j;
+                    }
+                }
+            }
+            theActors.add(nextActor);
+            nextIndexes[nextListIndex]++;
+        }
+    }
+
+    /**
+     * Merges given actor lists (each in world order) into given list in world order, using a min heap of the lists
+     * by world order of their next actor.
+     */
+    private static void mergeActorLists(List<List<Actor>> theLists, List<Actor> theActors)
+    {
+        // Create heap of non-empty list indexes, with index of next actor in each list (local, for parallel lookups)
+        int listCount = theLists.size();
+        int[] heap = new int[listCount];
+        int[] nextIndexes = new int[listCount];
+        int heapSize = 0;
+        for (int i = 0; i < listCount; i++)
+            if (!theLists.get(i).isEmpty())
+                heap[heapSize++] = i;
+        for (int i = heapSize / 2 - 1; i >= 0; i--)
+            siftDown(heap, heapSize, i, theLists, nextIndexes);
+
+        // Add next actor of top list, advance list and restore heap (or remove list if done) until heap empty
+        while (heapSize > 0) {
+            int listIndex = heap[0];
+            List<Actor> actorList = theLists.get(listIndex);
+            theActors.add(actorList.get(nextIndexes[listIndex]++));
+            if (nextIndexes[listIndex] == actorList.size())
+                heap[0] = heap[--heapSize];
+            if (heapSize > 0)
+                siftDown(heap, heapSize, 0, theLists, nextIndexes);
+        }
+    }
+
+    /**
+     * Moves heap entry at given position down until its next actor world order is no greater than its children's.
+     */
+    private static void siftDown(int[] aHeap, int aHeapSize, int aPos, List<List<Actor>> theLists, int[] theNextIndexes)
+    {
+        int listIndex = aHeap[aPos];
+        int worldOrder = getNextWorldOrder(theLists, theNextIndexes, listIndex);
+        int pos = aPos;
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= aHeapSize)
+                break;
+            int childOrder = getNextWorldOrder(theLists, theNextIndexes, aHeap[child]);
+            if (child + 1 < aHeapSize) {
+                int rightOrder = getNextWorldOrder(theLists, theNextIndexes, aHeap[child + 1]);
+                if (rightOrder < childOrder) {
+                    child++;
+                    childOrder = rightOrder;
+                }
+            }
+            if (worldOrder <= childOrder)
+                break;
+            aHeap[pos] = aHeap[child];
+            pos = child;
+        }
+        aHeap[pos] = listIndex;
+    }
+
+    /**
+     * Returns the world order of the next actor in list at given index.
+     */
+    private static int getNextWorldOrder(List<List<Actor>> theLists, int[] theNextIndexes, int aListIndex)
+    {
+        return theLists.get(aListIndex).get(theNextIndexes[aListIndex])._worldOrder;
+    }
+
+    /**
+     * Returns the actor lists for concrete classes that are instances of given class.
+     */
+    private List<List<Actor>> getActorListsForClass(Class<?> aClass)
+    {
+        // If already resolved, just return
+        List<List<Actor>> actorLists = _actorListsForClass.get(aClass);
+        if (actorLists != null)
+            return actorLists;
+
+        // Get actor lists for known concrete classes that are instances of given class
+        actorLists = new ArrayList<>();
+        for (Map.Entry<Class<?>, List<Actor>> entry : _actorsByClass.entrySet()) {
+            if (aClass.isAssignableFrom(entry.getKey()))
+                actorLists.add(entry.getValue());
+        }
+
+        // Cache and return (or return lists cached by a parallel lookup meanwhile)
+        List<List<Actor>> cachedLists = _actorListsForClass.putIfAbsent(aClass, actorLists);
+        return cachedLists != null ? cachedLists : actorLists;
+    }
+}
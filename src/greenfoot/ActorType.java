@@ -0,0 +1,79 @@
+package greenfoot;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dense integer id for a class, with a bitset of the ids of the class and all its superclasses and interfaces.
+ * World queries and paint order use it to test whether an actor is an instance of a class with one array lookup,
+ * instead of Class.isInstance (which can be slow for interfaces). Types are created once per class, at first sight.
+ */
+final class ActorType {
+
+    // The type id
+    private int _id;
+
+    // The ids of this type and its super types (a bit for each id)
+    private long[] _ancestorBits;
+
+    // Whether class is a ParallelActor
+    private boolean _parallel;
+
+    // The types for classes
+    private static final ClassValue<ActorType> _types = new ClassValue<>() {
+        protected ActorType computeValue(Class<?> aClass)  { return new ActorType(aClass); }
+    };
+
+    // The next type id
+    private static final AtomicInteger _nextId = new AtomicInteger();
+
+    /**
+     * Constructor for given class.
+     */
+    private ActorType(Class<?> aClass)
+    {
+        // Get super types first (so they have ids)
+        Class<?> superclass = aClass.getSuperclass();
+        Class<?>[] interfaces = aClass.getInterfaces();
+        ActorType[] superTypes = new ActorType[interfaces.length + (superclass != null ? 1 : 0)];
+        for (int i = 0; i < interfaces.length; i++)
+            superTypes[i] = get(interfaces[i]);
+        if (superclass != null)
+            superTypes[interfaces.length] = get(superclass);
+
+        // Get id and ancestor bits (this id plus ancestor bits of super types)
+        _id = _nextId.getAndIncrement();
+        _ancestorBits = new long[(_id >> 6) + 1];
+        _ancestorBits[_id >> 6] |= 1L << _id;
+        for (ActorType superType : superTypes) {
+            long[] superBits = superType._ancestorBits;
+            for (int i = 0; i < superBits.length; i++)
+                _ancestorBits[i] |= superBits[i];
+        }
+
+        // Get whether parallel
+        _parallel = ParallelActor.class.isAssignableFrom(aClass);
+    }
+
+    /**
+     * Returns the type id.
+     */
+    public int getId()  { return _id; }
+
+    /**
+     * Returns whether class is a ParallelActor (its act() can run at the same time as other parallel actors).
+     */
+    public boolean isParallel()  { return _parallel; }
+
+    /**
+     * Returns whether this type is given type or a subclass or implementation of it.
+     */
+    public boolean isInstanceOf(ActorType aType)
+    {
+        int word = aType._id >> 6;
+        return word < _ancestorBits.length && (_ancestorBits[word] & (1L << aType._id)) != 0;
+    }
+
+    /**
+     * Returns the type for given class.
+     */
+    public static ActorType get(Class<?> aClass)  { return _types.get(aClass); }
+}
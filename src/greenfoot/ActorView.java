@@ -1,4 +1,5 @@
 package greenfoot;
+import snap.gfx.Image;
 import snap.view.ImageView;
 
 /**
@@ -21,4 +22,62 @@ public class ActorView extends ImageView {
      * Returns the actor.
      */
     public Actor getActor()  { return _actor; }
+
+    /**
+     * Override to hold view lock while world parallel actors act.
+     */
+    @Override
+    public void setXY(double aX, double aY)
+    {
+        if (isParallelActing()) {
+            synchronized (ParallelAct.VIEW_LOCK) { super.setXY(aX, aY); }
+        }
+        else super.setXY(aX, aY);
+    }
+
+    /**
+     * Override to hold view lock while world parallel actors act.
+     */
+    @Override
+    public void setRotate(double aValue)
+    {
+        if (isParallelActing()) {
+            synchronized (ParallelAct.VIEW_LOCK) { super.setRotate(aValue); }
+        }
+        else super.setRotate(aValue);
+    }
+
+    /**
+     * Override to hold view lock while world parallel actors act.
+     */
+    @Override
+    public void setSize(double aW, double aH)
+    {
+        if (isParallelActing()) {
+            synchronized (ParallelAct.VIEW_LOCK) { super.setSize(aW, aH); }
+        }
+        else super.setSize(aW, aH);
+    }
+
+    /**
+     * Override to hold view lock while world parallel actors act.
+     */
+    @Override
+    public void setImage(Image anImage)
+    {
+        if (isParallelActing()) {
+            synchronized (ParallelAct.VIEW_LOCK) { super.setImage(anImage); }
+        }
+        else super.setImage(anImage);
+    }
+
+    /**
+     * Returns whether actor world has parallel actors acting (view changes then fire change events and register
+     * repaints with shared window state, which isn't thread-safe).
+     */
+    private boolean isParallelActing()
+    {
+        World world = _actor != null ? _actor._world : null;
+        return world != null && world.isParallelActing();
+    }
 }
@@ -0,0 +1,160 @@
+package greenfoot;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index of actors by the world cell of their location, used by worlds with a cell size greater than one.
+ * Actors at locations outside the world (in unbounded worlds) are kept in a separate list.
+ */
+class CellIndex {
+
+    // The number of cell columns and rows
+    private int _cols, _rows;
+
+    // The actors in each cell
+    private Actor[][] _buckets;
+
+    // The number of actors in each cell
+    private int[] _bucketCounts;
+
+    // The actors at locations outside the world cells
+    private Actor[] _outsideActors = new Actor[0];
+
+    // The number of actors outside the world cells
+    private int _outsideCount;
+
+    // Constants for actor cell index when actor isn't in index or is outside world cells
+    static final int NOT_INDEXED = -1;
+    static final int OUTSIDE_CELLS = -2;
+
+    /**
+     * Constructor for given world width and height in cells.
+     */
+    public CellIndex(int aCols, int aRows)
+    {
+        _cols = Math.max(aCols, 1);
+        _rows = Math.max(aRows, 1);
+        _buckets = new Actor[_cols * _rows][];
+        _bucketCounts = new int[_cols * _rows];
+    }
+
+    /**
+     * Adds or updates given actor for its current location.
+     */
+    public void updateActor(Actor anActor)
+    {
+        // If actor already in cell for location, just return
+        int cellIndex = getCellIndex(anActor.getX(), anActor.getY());
+        if (cellIndex == anActor._cellIndex)
+            return;
+
+        // Remove from old cell and add to new cell
+        removeActor(anActor);
+        if (cellIndex != OUTSIDE_CELLS)
+            addActorToBucket(anActor, cellIndex);
+        else addActorToOutside(anActor);
+        anActor._cellIndex = cellIndex;
+    }
+
+    /**
+     * Removes given actor.
+     */
+    public void removeActor(Actor anActor)
+    {
+        int cellIndex = anActor._cellIndex;
+        if (cellIndex == NOT_INDEXED)
+            return;
+
+        // Remove from cell bucket or outside actors
+        if (cellIndex != OUTSIDE_CELLS)
+            _bucketCounts[cellIndex] = removeActorFromArray(anActor, _buckets[cellIndex], _bucketCounts[cellIndex]);
+        else _outsideCount = removeActorFromArray(anActor, _outsideActors, _outsideCount);
+        anActor._cellIndex = NOT_INDEXED;
+    }
+
+    /**
+     * Adds the actors at given cell location to given list.
+     */
+    public void getActorsAt(int aX, int aY, List<Actor> theActors)
+    {
+        getActorsInRect(aX, aY, aX, aY, theActors);
+    }
+
+    /**
+     * Adds the actors at cell locations in given cell range (inclusive) to given list.
+     */
+    public void getActorsInRect(int aMinX, int aMinY, int aMaxX, int aMaxY, List<Actor> theActors)
+    {
+        // Add actors in cells in range that are inside world
+        int col0 = Math.max(aMinX, 0), col1 = Math.min(aMaxX, _cols - 1);
+        int row0 = Math.max(aMinY, 0), row1 = Math.min(aMaxY, _rows - 1);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cellIndex = row * _cols + col;
+                Actor[] bucket = _buckets[cellIndex];
+                for (int i = 0, iMax = _bucketCounts[cellIndex]; i < iMax; i++)
+                    theActors.add(bucket[i]);
+            }
+        }
+
+        // If range extends outside world, add outside actors in range
+        if (aMinX < 0 || aMinY < 0 || aMaxX >= _cols || aMaxY >= _rows) {
+            for (int i = 0; i < _outsideCount; i++) {
+                Actor actor = _outsideActors[i];
+                int actorX = actor.getX(), actorY = actor.getY();
+                if (actorX >= aMinX && actorX <= aMaxX && actorY >= aMinY && actorY <= aMaxY)
+                    theActors.add(actor);
+            }
+        }
+    }
+
+    /**
+     * Returns the cell index for given cell location (or OUTSIDE_CELLS).
+     */
+    private int getCellIndex(int aX, int aY)
+    {
+        if (aX < 0 || aY < 0 || aX >= _cols || aY >= _rows)
+            return OUTSIDE_CELLS;
+        return aY * _cols + aX;
+    }
+
+    /**
+     * Adds an actor to bucket at given cell index.
+     */
+    private void addActorToBucket(Actor anActor, int cellIndex)
+    {
+        Actor[] bucket = _buckets[cellIndex];
+        int count = _bucketCounts[cellIndex];
+        if (bucket == null)
+            bucket = _buckets[cellIndex] = new Actor[2];
+        else if (count == bucket.length)
+            bucket = _buckets[cellIndex] = Arrays.copyOf(bucket, count * 2);
+        bucket[count] = anActor;
+        _bucketCounts[cellIndex] = count + 1;
+    }
+
+    /**
+     * Adds an actor to outside actors.
+     */
+    private void addActorToOutside(Actor anActor)
+    {
+        if (_outsideCount == _outsideActors.length)
+            _outsideActors = Arrays.copyOf(_outsideActors, Math.max(_outsideCount * 2, 4));
+        _outsideActors[_outsideCount++] = anActor;
+    }
+
+    /**
+     * Removes an actor from given array with given count (swaps last actor into its slot) and returns new count.
+     */
+    private static int removeActorFromArray(Actor anActor, Actor[] theActors, int aCount)
+    {
+        for (int i = 0; i < aCount; i++) {
+            if (theActors[i] == anActor) {
+                theActors[i] = theActors[aCount - 1];
+                theActors[aCount - 1] = null;
+                return aCount - 1;
+            }
+        }
+        return aCount;
+    }
+}
@@ -0,0 +1,119 @@
+package greenfoot;
+import snap.gfx.Image;
+
+/**
+ * A bitmask of the opaque pixels of an image at a rotation, packed as 64 pixels per long, used for precise collision.
+ * The mask covers the rect that encloses the rotated image, centered on the image center.
+ */
+class CollisionMask {
+
+    // The mask width and height in pixels
+    private int _width, _height;
+
+    // The number of longs per mask row
+    private int _rowWords;
+
+    // The mask bits (row major, bit N of a word is column N of that word)
+    private long[] _bits;
+
+    // The minimum alpha for a pixel to count as opaque
+    private static final int OPAQUE_ALPHA = 1;
+
+    /**
+     * Constructor for given image and rotation in degrees. If solid, all pixels inside the image are set.
+     */
+    public CollisionMask(Image anImage, int aRotation, boolean isSolid)
+    {
+        // Get image size and size of rect enclosing rotated image
+        int imageW = anImage.getPixWidth();
+        int imageH = anImage.getPixHeight();
+        double radians = Math.toRadians(aRotation);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        boolean isRotated = aRotation % 360 != 0;
+        _width = isRotated ? (int) Math.ceil(Math.abs(imageW * cos) + Math.abs(imageH * sin) - 1e-9) : imageW;
+        _height = isRotated ? (int) Math.ceil(Math.abs(imageW * sin) + Math.abs(imageH * cos) - 1e-9) : imageH;
+        _rowWords = (_width + 63) >> 6;
+        _bits = new long[_rowWords * Math.max(_height, 1)];
+
+        // Iterate over mask pixels and set bit if pixel center maps to opaque image pixel
+        double halfW = _width / 2d, halfH = _height / 2d;
+        for (int y = 0; y < _height; y++) {
+            for (int x = 0; x < _width; x++) {
+
+                // Get image pixel for mask pixel (rotate mask pixel center back by rotation)
+                int imageX = x, imageY = y;
+                if (isRotated) {
+                    double pointX = x + .5 - halfW, pointY = y + .5 - halfH;
+                    imageX = (int) Math.floor(pointX * cos + pointY * sin + imageW / 2d);
+                    imageY = (int) Math.floor(pointY * cos - pointX * sin + imageH / 2d);
+                    if (imageX < 0 || imageY < 0 || imageX >= imageW || imageY >= imageH)
+                        continue;
+                }
+
+                // If solid or pixel opaque, set bit
+                if (isSolid || (anImage.getRGB(imageX, imageY) >>> 24) >= OPAQUE_ALPHA)
+                    _bits[y * _rowWords + (x >> 6)] |= 1L << (x & 63);
+            }
+        }
+    }
+
+    /**
+     * Returns the mask width.
+     */
+    public int getWidth()  { return _width; }
+
+    /**
+     * Returns the mask height.
+     */
+    public int getHeight()  { return _height; }
+
+    /**
+     * Returns whether the pixel at given mask x/y is set.
+     */
+    public boolean isSet(int aX, int aY)
+    {
+        if (aX < 0 || aY < 0 || aX >= _width || aY >= _height)
+            return false;
+        return (_bits[aY * _rowWords + (aX >> 6)] & (1L << (aX & 63))) != 0;
+    }
+
+    /**
+     * Returns whether any set pixel in this mask overlaps a set pixel in given mask, with given mask origin at
+     * given offset from this mask origin.
+     */
+    public boolean intersects(CollisionMask aMask, int dx, int dy)
+    {
+        // Get overlap of masks in this mask coords - just return if empty
+        int minX = Math.max(0, dx), maxX = Math.min(_width, dx + aMask._width);
+        int minY = Math.max(0, dy), maxY = Math.min(_height, dy + aMask._height);
+        if (minX >= maxX || minY >= maxY)
+            return false;
+
+        // Iterate over overlap rows and compare 64 pixels at a time
+        for (int y = minY; y < maxY; y++) {
+            int rowStart = y * _rowWords, otherRow = y - dy;
+            for (int x = minX; x < maxX; x += 64) {
+                int count = Math.min(64, maxX - x);
+                long bits = getBits(_bits, rowStart, x, count);
+                if (bits != 0 && (bits & getBits(aMask._bits, otherRow * aMask._rowWords, x - dx, count)) != 0)
+                    return true;
+            }
+        }
+
+        // Return no overlap
+        return false;
+    }
+
+    /**
+     * Returns the given count of bits (up to 64) starting at given column in row starting at given word index.
+     */
+    private static long getBits(long[] theBits, int aRowStart, int aCol, int aCount)
+    {
+        int wordIndex = aRowStart + (aCol >> 6), shift = aCol & 63;
+        long bits = theBits[wordIndex] >>> shift;
+        if (shift != 0 && shift + aCount > 64)
+            bits |= theBits[wordIndex + 1] << (64 - shift);
+        return aCount < 64 ? bits & ((1L << aCount) - 1) : bits;
+    }
+}
@@ -0,0 +1,130 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A buffer of the World adds and removes made during an act phase, applied when the phase ends. Until then the world
+ * child list and indexes don't change, so every actor in a frame sees the same world. Actors that are only removed
+ * are removed in one batch (so world lists are compacted once per frame instead of once per remove), then the other
+ * adds and removes are applied in the order made.
+ */
+class CommandBuffer {
+
+    // Whether world is in an act phase (adds and removes are buffered)
+    private boolean _buffering;
+
+    // The buffered adds and removes (in order made)
+    private List<Command> _commands = new ArrayList<>();
+
+    // The number of adds and removes applied
+    private long _addCount, _removeCount;
+
+    /**
+     * Returns whether world is in an act phase.
+     */
+    public boolean isBuffering()  { return _buffering; }
+
+    /**
+     * Starts buffering adds and removes for an act phase.
+     */
+    public void start()  { _buffering = true; }
+
+    /**
+     * Buffers adding given actor at given location. Returns false if not buffering.
+     */
+    public boolean addObject(Actor anActor, int aX, int aY)
+    {
+        if (!_buffering) return false;
+        _commands.add(new Command(anActor, aX, aY, false));
+        return true;
+    }
+
+    /**
+     * Buffers removing given actor (which doesn't act again before it is removed). Returns false if not buffering.
+     */
+    public boolean removeObject(Actor anActor)
+    {
+        if (!_buffering) return false;
+        anActor._removePending = true;
+        _commands.add(new Command(anActor, 0, 0, true));
+        return true;
+    }
+
+    /**
+     * Stops buffering and applies buffered adds and removes to given world: removes of actors that aren't also added
+     * in one batch, then other adds and removes in order made.
+     */
+    public void apply(World aWorld)
+    {
+        // Stop buffering (adds and removes made while applying, like in addedToWorld(), are applied now)
+        _buffering = false;
+
+        // Get actors added (their removes are applied in order with their adds)
+        Set<Actor> addedActors = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Command command : _commands) {
+            if (!command._remove)
+                addedActors.add(command._actor);
+        }
+
+        // Get actors only removed (once each, clearing pending marks) and remove them in one batch
+        List<Actor> removedActors = new ArrayList<>();
+        for (Command command : _commands) {
+            Actor actor = command._actor;
+            if (command._remove && actor._removePending) {
+                actor._removePending = false;
+                if (!addedActors.contains(actor))
+                    removedActors.add(actor);
+            }
+        }
+        aWorld.removeActors(removedActors);
+        _removeCount += removedActors.size();
+
+        // Apply other adds and removes in order
+        for (int i = 0; i < _commands.size(); i++) {
+            Command command = _commands.get(i);
+            Actor actor = command._actor;
+            if (!command._remove) {
+                aWorld.addObject(actor, command._x, command._y);
+                _addCount++;
+            }
+            else if (addedActors.contains(actor)) {
+                aWorld.removeObject(actor);
+                _removeCount++;
+            }
+        }
+        _commands.clear();
+    }
+
+    /**
+     * Returns a report of adds and removes applied.
+     */
+    public String getReport()
+    {
+        return String.format("CommandBuffer: %d adds, %d removes", _addCount, _removeCount);
+    }
+
+    /**
+     * A buffered add or remove.
+     */
+    private static class Command {
+
+        // The actor, add location and whether remove
+        private Actor _actor;
+        private int _x, _y;
+        private boolean _remove;
+
+        /**
+         * Constructor.
+         */
+        Command(Actor anActor, int aX, int aY, boolean isRemove)
+        {
+            _actor = anActor;
+            _x = aX;
+            _y = aY;
+            _remove = isRemove;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of touching actor pairs in a World, kept between act cycles and updated incrementally: each update only
+ * re-tests the pairs of actors that moved, rotated or changed image, collision settings or layers since the last
+ * update, so static actors cost nothing. Also keeps the pairs that began and ended touching in the last update.
+ */
+class ContactSet {
+
+    // The touching pairs (in world order)
+    private List<ActorPair> _contacts = new ArrayList<>();
+
+    // The pairs that began touching and that ended touching in last update
+    private List<ActorPair> _beginContacts = new ArrayList<>(), _endContacts = new ArrayList<>();
+
+    // The pairs that ended touching since last update because an actor was removed
+    private List<ActorPair> _removedContacts = new ArrayList<>();
+
+    // The actors changed since last update
+    private List<Actor> _changedActors = new ArrayList<>();
+
+    // The current update number, used to mark actors updated
+    private int _updateNumber;
+
+    // The last update number used by any contact set (so actor marks from another set never match)
+    private static final AtomicInteger _lastUpdateNumber = new AtomicInteger();
+
+    // The number of pair tests in last update
+    private int _testCount;
+
+    // A reusable list for candidate actors
+    private List<Actor> _candidates = new ArrayList<>();
+
+    // Reusable arrays for actor bounds rects
+    private double[] _boundsRect = new double[4], _otherBoundsRect = new double[4];
+
+    /**
+     * Returns the touching pairs (in world order).
+     */
+    public List<ActorPair> getContacts()  { return _contacts; }
+
+    /**
+     * Returns the pairs that began touching in last update (in world order).
+     */
+    public List<ActorPair> getBeginContacts()  { return _beginContacts; }
+
+    /**
+     * Adds the pairs that were touching before last update and still are to given list (in world order).
+     */
+    public void getStayContacts(List<ActorPair> thePairs)
+    {
+        for (ActorPair pair : _contacts)
+            if (pair._beginUpdate != _updateNumber)
+                thePairs.add(pair);
+    }
+
+    /**
+     * Returns the pairs that ended touching in last update, or because an actor was removed before it.
+     */
+    public List<ActorPair> getEndContacts()  { return _endContacts; }
+
+    /**
+     * Returns the number of pair tests in last update.
+     */
+    public int getTestCount()  { return _testCount; }
+
+    /**
+     * Called when an actor location, rotation, image, collision settings or layers change (or actor is added).
+     */
+    public void actorChanged(Actor anActor)
+    {
+        if (anActor._contactChanged) return;
+        anActor._contactChanged = true;
+        _changedActors.add(anActor);
+    }
+
+    /**
+     * Called when an actor is removed from world to end its pairs (and clear its changed flag, so that if it is added
+     * to another world before this set updates, that world's contact set still sees it as changed).
+     */
+    public void actorRemoved(Actor anActor)
+    {
+        anActor._contactChanged = false;
+        List<ActorPair> contacts = anActor._contacts;
+        if (contacts == null) return;
+        for (int i = contacts.size() - 1; i >= 0; i--) {
+            ActorPair pair = contacts.get(i);
+            removeContact(pair);
+            _removedContacts.add(pair);
+        }
+    }
+
+    /**
+     * Clears the pairs and changed flags of given actors (when contact set is no longer used).
+     */
+    public void clearActors(List<Actor> theActors)
+    {
+        for (Actor actor : theActors) {
+            actor._contacts = null;
+            actor._contactChanged = false;
+        }
+    }
+
+    /**
+     * Updates touching pairs for the actors changed since last update, using given spatial index to find candidates.
+     */
+    public void update(World aWorld, SpatialIndex anIndex)
+    {
+        // Reset begin and end pairs (pairs ended by removed actors are ended in this update)
+        int updateNumber = _updateNumber = _lastUpdateNumber.incrementAndGet();
+        _beginContacts.clear();
+        _endContacts.clear();
+        _endContacts.addAll(_removedContacts);
+        _removedContacts.clear();
+        _testCount = 0;
+
+        // Update pairs of changed actors that are still in world
+        for (int i = 0, iMax = _changedActors.size(); i < iMax; i++) {
+            Actor actor = _changedActors.get(i);
+            actor._contactChanged = false;
+            if (actor._world != aWorld)
+                continue;
+            updateActorContacts(actor, anIndex, updateNumber);
+            actor._contactUpdate = updateNumber;
+        }
+        _changedActors.clear();
+
+        // If pairs began or ended, update touching pairs
+        if (!_beginContacts.isEmpty() || !_endContacts.isEmpty()) {
+            _contacts.removeIf(pair -> pair._ended);
+            _contacts.addAll(_beginContacts);
+            _contacts.sort(ActorPair.WORLD_ORDER_COMPARATOR);
+            _beginContacts.sort(ActorPair.WORLD_ORDER_COMPARATOR);
+            _endContacts.sort(ActorPair.WORLD_ORDER_COMPARATOR);
+        }
+    }
+
+    /**
+     * Re-tests the pairs of given actor with actors not yet updated, and finds new pairs with them.
+     */
+    private void updateActorContacts(Actor anActor, SpatialIndex anIndex, int anUpdateNumber)
+    {
+        // End current pairs with actors not yet updated that are no longer touching
+        // (pairs with actors already updated were tested in their update)
+        List<ActorPair> contacts = anActor._contacts;
+        if (contacts != null) {
+            for (int i = contacts.size() - 1; i >= 0; i--) {
+                ActorPair pair = contacts.get(i);
+                Actor otherActor = pair.getOther(anActor);
+                if (otherActor._contactUpdate != anUpdateNumber && !isTouching(anActor, otherActor)) {
+                    removeContact(pair);
+                    _endContacts.add(pair);
+                }
+            }
+        }
+
+        // Get candidate actors from spatial index
+        double[] bounds = _boundsRect;
+        anActor.getBoundsRectInWorld(bounds);
+        List<Actor> candidates = _candidates;
+        anIndex.getActorsInRect(bounds[0], bounds[1], bounds[2], bounds[3], anActor.getLayerMask(), candidates);
+
+        // Add pairs for candidates not yet updated or paired that are touching
+        double[] otherBounds = _otherBoundsRect;
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+            Actor otherActor = candidates.get(i);
+            if (otherActor == anActor || otherActor._contactUpdate == anUpdateNumber || isContact(anActor, otherActor))
+                continue;
+            otherActor.getBoundsRectInWorld(otherBounds);
+            if (otherBounds[0] > bounds[2] || otherBounds[2] < bounds[0] || otherBounds[1] > bounds[3] || otherBounds[3] < bounds[1])
+                continue;
+            if (isTouching(anActor, otherActor))
+                addContact(anActor, otherActor, anUpdateNumber);
+        }
+        candidates.clear();
+    }
+
+    /**
+     * Returns whether given actors find each other by layer and intersect.
+     */
+    private boolean isTouching(Actor anActor, Actor otherActor)
+    {
+        _testCount++;
+        return anActor.isLayerMatch(otherActor) && otherActor.isLayerMatch(anActor) && anActor.intersects(otherActor);
+    }
+
+    /**
+     * Returns whether given actors are a current pair.
+     */
+    private static boolean isContact(Actor anActor, Actor otherActor)
+    {
+        List<ActorPair> contacts = anActor._contacts;
+        if (contacts != null) {
+            for (int i = 0, iMax = contacts.size(); i < iMax; i++)
+                if (contacts.get(i).getOther(anActor) == otherActor)
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a new pair for given actors (in world order).
+     */
+    private void addContact(Actor anActor, Actor otherActor, int anUpdateNumber)
+    {
+        ActorPair pair = anActor._worldOrder < otherActor._worldOrder ? new ActorPair(anActor, otherActor) :
+            new ActorPair(otherActor, anActor);
+        pair._beginUpdate = anUpdateNumber;
+        addActorContact(anActor, pair);
+        addActorContact(otherActor, pair);
+        _beginContacts.add(pair);
+    }
+
+    /**
+     * Removes given pair from its actors and marks it ended.
+     */
+    private static void removeContact(ActorPair aPair)
+    {
+        removeActorContact(aPair.getActor1(), aPair);
+        removeActorContact(aPair.getActor2(), aPair);
+        aPair._ended = true;
+    }
+
+    /**
+     * Adds given pair to given actor pairs.
+     */
+    private static void addActorContact(Actor anActor, ActorPair aPair)
+    {
+        if (anActor._contacts == null)
+            anActor._contacts = new ArrayList<>(4);
+        anActor._contacts.add(aPair);
+    }
+
+    /**
+     * Removes given pair from given actor pairs.
+     */
+    private static void removeActorContact(Actor anActor, ActorPair aPair)
+    {
+        List<ActorPair> contacts = anActor._contacts;
+        for (int i = contacts.size() - 1; i >= 0; i--) {
+            if (contacts.get(i) == aPair) {
+                contacts.remove(i);
+                return;
+            }
+        }
+    }
+}
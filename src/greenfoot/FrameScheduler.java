@@ -0,0 +1,92 @@
+package greenfoot;
+
+/**
+ * A fixed-timestep schedule for act frames, driven by a timer that ticks more often than frames are due. Each tick
+ * asks for the number of frames due by System.nanoTime, so late ticks are made up with extra frames (up to a limit)
+ * instead of slowing the simulation, and the world is painted once per tick instead of once per frame.
+ */
+class FrameScheduler {
+
+    // The frame period in nanoseconds (0 for as fast as possible)
+    private long _periodNanos;
+
+    // The time the next frame is due
+    private long _nextFrameTime;
+
+    // Whether schedule has been reset (so next frame time is valid)
+    private boolean _scheduled;
+
+    // The number of ticks, frames run, ticks that ran more than one frame and frames dropped
+    private long _tickCount, _frameCount, _catchUpCount, _droppedCount;
+
+    // The most frames run in one tick to catch up (older frames are dropped, so a slow world can't fall further behind)
+    static final int MAX_CATCH_UP_FRAMES = 5;
+
+    /**
+     * Returns the frame period in nanoseconds.
+     */
+    public long getPeriodNanos()  { return _periodNanos; }
+
+    /**
+     * Sets the frame period in nanoseconds (0 for as fast as possible).
+     */
+    public void setPeriodNanos(long aValue)
+    {
+        // Keep time of next frame relative to last frame (or if no schedule yet or was as fast as possible, start from now)
+        if (_scheduled && _periodNanos > 0)
+            _nextFrameTime += aValue - _periodNanos;
+        else reset(System.nanoTime() + aValue);
+        _periodNanos = aValue;
+    }
+
+    /**
+     * Resets schedule so that next frame is due at given time.
+     */
+    public void reset(long aTime)
+    {
+        _nextFrameTime = aTime;
+        _scheduled = true;
+    }
+
+    /**
+     * Returns the number of frames due at given time and advances schedule past them. Schedule advances by whole
+     * periods (not from given time), so timer drift doesn't add up.
+     */
+    public int getFramesDue(long aTime)
+    {
+        // If as fast as possible, return one frame per tick
+        _tickCount++;
+        if (_periodNanos <= 0) {
+            _frameCount++;
+            return 1;
+        }
+
+        // If next frame not due, return none
+        if (aTime < _nextFrameTime)
+            return 0;
+
+        // Get frames due (if too many, drop older frames and restart schedule from given time)
+        long framesDue = (aTime - _nextFrameTime) / _periodNanos + 1;
+        if (framesDue > MAX_CATCH_UP_FRAMES) {
+            _droppedCount += framesDue - MAX_CATCH_UP_FRAMES;
+            framesDue = MAX_CATCH_UP_FRAMES;
+            _nextFrameTime = aTime + _periodNanos;
+        }
+        else _nextFrameTime += framesDue * _periodNanos;
+
+        // Update counts and return
+        _frameCount += framesDue;
+        if (framesDue > 1)
+            _catchUpCount++;
+        return (int) framesDue;
+    }
+
+    /**
+     * Returns a report of ticks, frames, catch-up ticks and dropped frames.
+     */
+    public String getReport()
+    {
+        return String.format("FrameScheduler: %.1f ms period, %d ticks, %d frames, %d catch-up ticks, %d dropped frames",
+            _periodNanos / 1e6, _tickCount, _frameCount, _catchUpCount, _droppedCount);
+    }
+}
@@ -31,9 +31,24 @@ public class GreenfootEnv extends PropObject {
     // The greenfoot project
     private GreenfootProject _greenfootProject;
 
-    // The animation timer
+    // The animation timer (created when needed)
     private ViewTimer _timer;
 
+    // The fixed-timestep schedule that timer ticks ask for the frames due
+    private FrameScheduler _frameScheduler = new FrameScheduler();
+
+    // Whether env runs without a window, timer or painting (world is advanced by calling step())
+    private boolean _headless;
+
+    // The world, when headless (otherwise world is in PlayerPane)
+    private World _headlessWorld;
+
+    // Whether headless steps are running (cleared by stop())
+    private boolean _headlessRunning;
+
+    // The number of headless steps, actor acts and total step time in nanoseconds
+    private long _stepCount, _actorActCount, _stepNanos;
+
     // The loaded images
     private Map<String, Image> _imageCache = new HashMap<>();
 
@@ -60,7 +75,23 @@ public class GreenfootEnv extends PropObject {
      */
     public GreenfootEnv()
     {
-        _timer = new ViewTimer(this::act, 40);
+        _frameScheduler.setPeriodNanos(convertSpeedToDelayNanos(_speed));
+    }
+
+    /**
+     * Returns whether env runs without a window, timer or painting.
+     */
+    public boolean isHeadless()  { return _headless; }
+
+    /**
+     * Sets whether env runs without a window, timer or painting, for running scenarios on machines with no display.
+     * A headless world is advanced by calling step(). Sounds and user input prompts are skipped.
+     */
+    public void setHeadless(boolean aValue)
+    {
+        if (aValue == _headless) return;
+        stop();
+        _headless = aValue;
     }
 
     /**
@@ -68,6 +99,8 @@ public class GreenfootEnv extends PropObject {
      */
     public World getWorld()
     {
+        if (_headless)
+            return _headlessWorld;
         PlayerPane playerPane = getPlayerPane();
         return playerPane.getWorld();
     }
@@ -77,10 +110,58 @@ public class GreenfootEnv extends PropObject {
      */
     public void setWorld(World aWorld)
     {
+        if (_headless) {
+            _headlessWorld = aWorld;
+            return;
+        }
         PlayerPane playerPane = getPlayerPane();
         playerPane.setWorld(aWorld);
     }
 
+    /**
+     * Runs given number of frames as fast as possible: calls World.act() and the actors act() methods (no painting).
+     * Stops early if stop() is called (like Greenfoot.stop() at game over). Returns the number of frames run.
+     * Exceptions from act methods are thrown to caller.
+     */
+    public int step(int aCount)
+    {
+        WorldView worldView = getWorldView();
+        if (worldView == null)
+            return 0;
+
+        // Run frames until count or stopped
+        _headlessRunning = true;
+        int stepCount = 0;
+        long startTime = System.nanoTime();
+        try {
+            while (stepCount < aCount && _headlessRunning) {
+                _actorActCount += worldView.getWorld().numberOfObjects();
+                worldView.doAct();
+                stepCount++;
+            }
+        }
+
+        // Record steps and time
+        finally {
+            _headlessRunning = false;
+            _stepCount += stepCount;
+            _stepNanos += System.nanoTime() - startTime;
+        }
+
+        // Return
+        return stepCount;
+    }
+
+    /**
+     * Returns a report of step count and act throughput for step() calls.
+     */
+    public String getStepReport()
+    {
+        double seconds = Math.max(_stepNanos / 1e9, 1e-9);
+        return String.format("%d steps in %.1f ms, %.1f steps/sec, %.0f actor acts/sec",
+            _stepCount, _stepNanos / 1e6, _stepCount / seconds, _actorActCount / seconds);
+    }
+
     /**
      * Sets the world for given class name.
      */
@@ -113,25 +194,76 @@ public class GreenfootEnv extends PropObject {
     {
         _speed = aValue;
 
-        // Set timer delay for speed
-        int timerPeriodMillis = GreenfootEnv.convertSpeedToDelayMillis(_speed);
-        _timer.setPeriod(timerPeriodMillis);
+        // Set frame period and timer tick period for speed
+        _frameScheduler.setPeriodNanos(convertSpeedToDelayNanos(_speed));
+        if (_timer != null)
+            _timer.setPeriod(getTimerPeriodMillis());
+    }
+
+    /**
+     * Returns the animation timer (created with tick period for speed, if needed).
+     */
+    private ViewTimer getTimer()
+    {
+        if (_timer != null) return _timer;
+        return _timer = new ViewTimer(this::handleTimerTick, getTimerPeriodMillis());
+    }
+
+    /**
+     * Returns the timer tick period in milliseconds: half the frame period, so frames are run close to when due
+     * (at least 1, so fast speeds don't get a zero delay timer that spins).
+     */
+    private int getTimerPeriodMillis()
+    {
+        return (int) Math.max(_frameScheduler.getPeriodNanos() / 2000000, 1);
     }
 
+    /**
+     * Called on timer tick to play the frames that are due (the world is painted once after, so paints are skipped
+     * when catching up).
+     */
+    private void handleTimerTick()
+    {
+        int frameCount = _frameScheduler.getFramesDue(System.nanoTime());
+        for (int i = 0; i < frameCount && isPlaying(); i++)
+            act();
+    }
+
+    /**
+     * Returns a report of frame schedule ticks, frames, catch-up ticks and dropped frames.
+     */
+    public String getFrameReport()  { return _frameScheduler.getReport(); }
+
     /**
      * Returns whether game is running.
      */
-    public boolean isPlaying()  { return _timer.isRunning(); }
+    public boolean isPlaying()
+    {
+        if (_headless)
+            return _headlessRunning;
+        return _timer != null && _timer.isRunning();
+    }
 
     /**
-     * Starts greenfoot playing.
+     * Starts greenfoot playing (headless worlds are advanced with step() instead).
      */
-    public void start()  { _timer.start(); }
+    public void start()
+    {
+        if (_headless) return;
+        _frameScheduler.reset(System.nanoTime());
+        getTimer().start();
+    }
 
     /**
      * Stops Greenfoot from playing.
      */
-    public void stop()  { _timer.stop(); }
+    public void stop()
+    {
+        if (_headless)
+            _headlessRunning = false;
+        else if (_timer != null)
+            _timer.stop();
+    }
 
     /**
      * Plays one frame of game.
@@ -156,6 +288,7 @@ public class GreenfootEnv extends PropObject {
      */
     public void playSound(String aName)
     {
+        if (_headless) return;
         SoundClip soundClip = getSoundClipForName(aName);
         if (soundClip != null)
             soundClip.play();
@@ -239,6 +372,10 @@ public class GreenfootEnv extends PropObject {
      */
     public String ask(String aPrompt)
     {
+        // If headless, there is no user to ask
+        if (_headless)
+            return "";
+
         stop();
 
         String title = "User Input";
@@ -250,7 +387,24 @@ public class GreenfootEnv extends PropObject {
     /**
      * Returns a random number.
      */
-    public int getRandomNumber(int aNum)  { return _random.nextInt(aNum); }
+    public int getRandomNumber(int aNum)
+    {
+        // If called from a parallel actor act, use actor random (so numbers don't depend on thread timing)
+        Random actorRandom = ParallelAct.getActorRandom();
+        if (actorRandom != null)
+            return actorRandom.nextInt(aNum);
+        return _random.nextInt(aNum);
+    }
+
+    /**
+     * Sets the seed of the random used for random numbers, so that a scenario run can be repeated.
+     */
+    public void setRandomSeed(long aSeed)  { _random.setSeed(aSeed); }
+
+    /**
+     * Returns a new seed from the random used for random numbers (for parallel actor randoms).
+     */
+    static long getRandomSeed()  { return _random.nextLong(); }
 
     /**
      * Returns the greenfoot PlayerPane.
@@ -506,9 +660,9 @@ public class GreenfootEnv extends PropObject {
     }
 
     /**
-     * Returns the delay in milliseconds for given greenfoot speed.
+     * Returns the delay in nanoseconds for given greenfoot speed.
      */
-    private static int convertSpeedToDelayMillis(int aSpeed)
+    private static long convertSpeedToDelayNanos(int aSpeed)
     {
         // Make the speed into a delay
         long rawDelay = 100 - aSpeed;
@@ -521,7 +675,7 @@ public class GreenfootEnv extends PropObject {
         if (rawDelay > 0)
             timerPeriodNanos = (long) (Math.pow(a, rawDelay - 1) * min);
 
-        // Convert nanoseconds to millis and return
-        return (int) Math.round(timerPeriodNanos / 1000000d);
+        // Return
+        return timerPeriodNanos;
     }
 }
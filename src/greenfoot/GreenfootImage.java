@@ -28,12 +28,15 @@ public class GreenfootImage {
     // The image alpha
     private int _alpha = 255;
 
-    // Set of actors that are using this image
+    // Set of actors that are using this image (synchronized on set, since parallel actors can set images at once)
     protected Set<Actor> _actors = new HashSet<>();
 
     // The world that is using this image
     protected World _world;
 
+    // The collision masks of opaque pixels and of all pixels for rotations (created lazily, cleared when image changes)
+    private Map<Integer, CollisionMask> _collisionMasks, _solidCollisionMasks;
+
     /**
      * Constructor for size.
      */
@@ -317,6 +320,56 @@ public class GreenfootImage {
         pntr.setComposite(Painter.Composite.SRC_IN);
         pntr.setColor(snap.gfx.Color.CLEAR);
         pntr.fillRect(0, 0, getWidth(), getHeight());
+        imagePainted();
+    }
+
+    /**
+     * Returns the collision mask for given rotation. If solid, the mask includes all pixels, not just opaque ones.
+     */
+    CollisionMask getCollisionMask(int aRotation, boolean isSolid)
+    {
+        // Get masks map for type (create if needed)
+        Map<Integer, CollisionMask> masks = isSolid ? _solidCollisionMasks : _collisionMasks;
+        if (masks == null) {
+            masks = new HashMap<>();
+            if (isSolid) _solidCollisionMasks = masks;
+            else _collisionMasks = masks;
+        }
+
+        // Get mask for rotation (create if needed)
+        CollisionMask mask = masks.get(aRotation);
+        if (mask == null) {
+            mask = new CollisionMask(_image, aRotation, isSolid);
+            masks.put(aRotation, mask);
+        }
+
+        // Return
+        return mask;
+    }
+
+    /**
+     * Clears the collision masks.
+     */
+    private void clearCollisionMasks()
+    {
+        _collisionMasks = null;
+        _solidCollisionMasks = null;
+    }
+
+    /**
+     * Adds an actor using this image.
+     */
+    void addActor(Actor anActor)
+    {
+        synchronized (_actors) { _actors.add(anActor); }
+    }
+
+    /**
+     * Removes an actor using this image.
+     */
+    void removeActor(Actor anActor)
+    {
+        synchronized (_actors) { _actors.remove(anActor); }
     }
 
     /**
@@ -324,8 +377,11 @@ public class GreenfootImage {
      */
     void imageChanged()
     {
-        for (Actor actor : _actors)
-            actor.imageChanged();
+        clearCollisionMasks();
+        synchronized (_actors) {
+            for (Actor actor : _actors)
+                actor.imageChanged();
+        }
         if (_world != null)
             _world.repaint();
     }
@@ -335,6 +391,11 @@ public class GreenfootImage {
      */
     void imagePainted()
     {
+        clearCollisionMasks();
+        synchronized (_actors) {
+            for (Actor actor : _actors)
+                actor.imagePainted();
+        }
         if (_world != null)
             _world.repaint();
     }
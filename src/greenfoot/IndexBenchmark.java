@@ -0,0 +1,216 @@
+package greenfoot;
+import snap.geom.Rect;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SpatialIndex that wraps a World spatial index to time its updates and queries, and runs every query
+ * against the original linear scan as well, so the costs can be reported side by side. Each query also times the
+ * exact test (actor bounds shape against query rect, point or segment) over the candidates of both, since that is
+ * where the linear scan spent its time.
+ */
+class IndexBenchmark implements SpatialIndex {
+
+    // The spatial index being measured
+    private SpatialIndex _index;
+
+    // The linear scan index to compare against
+    private SpatialIndex _linearIndex;
+
+    // The number of updates and total update time in nanoseconds
+    private long _updateCount, _updateNanos;
+
+    // The number of queries, total query time in nanoseconds and total candidates returned
+    private long _queryCount, _queryNanos, _queryCandidates;
+
+    // The total linear scan query time in nanoseconds and total candidates returned
+    private long _linearNanos, _linearCandidates;
+
+    // The total exact test time in nanoseconds for index and linear scan candidates, and total exact test hits
+    private long _exactNanos, _linearExactNanos, _exactHits;
+
+    // A list to receive linear scan candidates
+    private List<Actor> _linearActors = new ArrayList<>();
+
+    /**
+     * Constructor for given index and linear scan index.
+     */
+    public IndexBenchmark(SpatialIndex anIndex, SpatialIndex aLinearIndex)
+    {
+        _index = anIndex;
+        _linearIndex = aLinearIndex;
+    }
+
+    /**
+     * Returns the spatial index being measured.
+     */
+    public SpatialIndex getIndex()  { return _index; }
+
+    /**
+     * Adds or updates given actor and records time.
+     */
+    public void updateActor(Actor anActor)
+    {
+        long startTime = System.nanoTime();
+        _index.updateActor(anActor);
+        _updateNanos += System.nanoTime() - startTime;
+        _updateCount++;
+    }
+
+    /**
+     * Removes given actor and records time.
+     */
+    public void removeActor(Actor anActor)
+    {
+        long startTime = System.nanoTime();
+        _index.removeActor(anActor);
+        _updateNanos += System.nanoTime() - startTime;
+        _updateCount++;
+    }
+
+    /**
+     * Adds the actors in rect to given list and records time for index and linear scan.
+     */
+    public void getActorsInRect(double aMinX, double aMinY, double aMaxX, double aMaxY, int aLayerMask, List<Actor> theActors)
+    {
+        // Run and time index query
+        int oldSize = theActors.size();
+        long startTime = System.nanoTime();
+        _index.getActorsInRect(aMinX, aMinY, aMaxX, aMaxY, aLayerMask, theActors);
+        long endTime = System.nanoTime();
+        recordQuery(endTime - startTime, theActors.size() - oldSize);
+
+        // Run and time linear scan query
+        _linearActors.clear();
+        startTime = System.nanoTime();
+        _linearIndex.getActorsInRect(aMinX, aMinY, aMaxX, aMaxY, aLayerMask, _linearActors);
+        endTime = System.nanoTime();
+        recordLinearQuery(endTime - startTime, _linearActors.size());
+
+        // Run and time exact test for index and linear scan candidates
+        Rect rect = new Rect(aMinX, aMinY, aMaxX - aMinX, aMaxY - aMinY);
+        startTime = System.nanoTime();
+        int hitCount = 0;
+        for (int i = oldSize, iMax = theActors.size(); i < iMax; i++)
+            if (theActors.get(i).getBoundsInWorld().intersectsShape(rect))
+                hitCount++;
+        endTime = System.nanoTime();
+        long linearStartTime = endTime;
+        for (Actor actor : _linearActors)
+            actor.getBoundsInWorld().intersectsShape(rect);
+        recordExactTests(endTime - startTime, System.nanoTime() - linearStartTime, hitCount);
+    }
+
+    /**
+     * Adds the actors at point to given list and records time for index and linear scan.
+     */
+    public void getActorsAtPoint(double aX, double aY, int aLayerMask, List<Actor> theActors)
+    {
+        // Run and time index query
+        int oldSize = theActors.size();
+        long startTime = System.nanoTime();
+        _index.getActorsAtPoint(aX, aY, aLayerMask, theActors);
+        long endTime = System.nanoTime();
+        recordQuery(endTime - startTime, theActors.size() - oldSize);
+
+        // Run and time linear scan query
+        _linearActors.clear();
+        startTime = System.nanoTime();
+        _linearIndex.getActorsAtPoint(aX, aY, aLayerMask, _linearActors);
+        endTime = System.nanoTime();
+        recordLinearQuery(endTime - startTime, _linearActors.size());
+
+        // Run and time exact test for index and linear scan candidates
+        startTime = System.nanoTime();
+        int hitCount = 0;
+        for (int i = oldSize, iMax = theActors.size(); i < iMax; i++)
+            if (theActors.get(i).getBoundsInWorld().contains(aX, aY))
+                hitCount++;
+        endTime = System.nanoTime();
+        long linearStartTime = endTime;
+        for (Actor actor : _linearActors)
+            actor.getBoundsInWorld().contains(aX, aY);
+        recordExactTests(endTime - startTime, System.nanoTime() - linearStartTime, hitCount);
+    }
+
+    /**
+     * Adds the actors on segment to given list and records time for index and linear scan.
+     */
+    public void getActorsOnSegment(double aX0, double aY0, double aX1, double aY1, int aLayerMask, List<Actor> theActors)
+    {
+        // Run and time index query
+        int oldSize = theActors.size();
+        long startTime = System.nanoTime();
+        _index.getActorsOnSegment(aX0, aY0, aX1, aY1, aLayerMask, theActors);
+        long endTime = System.nanoTime();
+        recordQuery(endTime - startTime, theActors.size() - oldSize);
+
+        // Run and time linear scan query
+        _linearActors.clear();
+        startTime = System.nanoTime();
+        _linearIndex.getActorsOnSegment(aX0, aY0, aX1, aY1, aLayerMask, _linearActors);
+        endTime = System.nanoTime();
+        recordLinearQuery(endTime - startTime, _linearActors.size());
+
+        // Run and time exact test for index and linear scan candidates
+        startTime = System.nanoTime();
+        int hitCount = 0;
+        for (int i = oldSize, iMax = theActors.size(); i < iMax; i++)
+            if (theActors.get(i).getSegmentHitFraction(aX0, aY0, aX1, aY1) >= 0)
+                hitCount++;
+        endTime = System.nanoTime();
+        long linearStartTime = endTime;
+        for (Actor actor : _linearActors)
+            actor.getSegmentHitFraction(aX0, aY0, aX1, aY1);
+        recordExactTests(endTime - startTime, System.nanoTime() - linearStartTime, hitCount);
+    }
+
+    /**
+     * Returns a report of the update and query costs of index next to linear scan: the candidate query alone, and the
+     * candidate query plus exact tests of the candidates (the full query cost).
+     */
+    public String getReport()
+    {
+        String indexName = _index.getClass().getSimpleName();
+        long queryCount = Math.max(_queryCount, 1);
+        return String.format("%s: %d updates, %.3f us/update; %d queries, %.3f us/query, %.1f candidates/query, " +
+            "%.3f us/query with exact tests\n" +
+            "LinearIndex: 0 updates, 0.000 us/update; %d queries, %.3f us/query, %.1f candidates/query, " +
+            "%.3f us/query with exact tests\n" +
+            "Exact tests: %.1f hits/query",
+            indexName, _updateCount, _updateNanos / 1000d / Math.max(_updateCount, 1), _queryCount,
+            _queryNanos / 1000d / queryCount, _queryCandidates / (double) queryCount,
+            (_queryNanos + _exactNanos) / 1000d / queryCount,
+            _queryCount, _linearNanos / 1000d / queryCount, _linearCandidates / (double) queryCount,
+            (_linearNanos + _linearExactNanos) / 1000d / queryCount, _exactHits / (double) queryCount);
+    }
+
+    /**
+     * Records an index query.
+     */
+    private void recordQuery(long theNanos, int aCandidateCount)
+    {
+        _queryCount++;
+        _queryNanos += theNanos;
+        _queryCandidates += aCandidateCount;
+    }
+
+    /**
+     * Records the exact tests of a query for index and linear scan candidates.
+     */
+    private void recordExactTests(long theNanos, long theLinearNanos, int aHitCount)
+    {
+        _exactNanos += theNanos;
+        _linearExactNanos += theLinearNanos;
+        _exactHits += aHitCount;
+    }
+
+    /**
+     * Records a linear scan query.
+     */
+    private void recordLinearQuery(long theNanos, int aCandidateCount)
+    {
+        _linearNanos += theNanos;
+        _linearCandidates += aCandidateCount;
+    }
+}
@@ -0,0 +1,93 @@
+package greenfoot;
+import snap.geom.Rect;
+import snap.geom.Shape;
+import snap.view.View;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A microbenchmark that times actor intersection tests with transformed bounds shapes against the rect and
+ * separating axis tests in Actor.isBoundsIntersecting, for actor pairs with overlapping bounds rects.
+ * Call getReport() with actor count, percent of actors rotated by arbitrary angles and repeat count.
+ */
+class IntersectionBenchmark {
+
+    /**
+     * Returns a report of intersection test times for given actor count, percent rotated and repeat count.
+     */
+    public static String getReport(int anActorCount, int aRotatedPercent, int aRepeatCount)
+    {
+        // Create world with actors of random sizes, locations and rotations (others at multiples of 90)
+        Random random = new Random(1);
+        World world = new World(800, 600, 1, false);
+        List<Actor> actors = new ArrayList<>();
+        for (int i = 0; i < anActorCount; i++) {
+            Actor actor = new Actor();
+            actor.setImage(new GreenfootImage(10 + random.nextInt(50), 10 + random.nextInt(50)));
+            world.addObject(actor, random.nextInt(800), random.nextInt(600));
+            actor.setRotation(random.nextInt(100) < aRotatedPercent ? random.nextInt(360) : random.nextInt(4) * 90);
+            actors.add(actor);
+        }
+
+        // Get pairs with overlapping bounds rects (the pairs that reach exact test in World queries)
+        List<Actor[]> pairs = new ArrayList<>();
+        double[] bounds1 = new double[4], bounds2 = new double[4];
+        for (int i = 0; i < actors.size(); i++) {
+            actors.get(i).getBoundsRectInWorld(bounds1);
+            for (int j = i + 1; j < actors.size(); j++) {
+                actors.get(j).getBoundsRectInWorld(bounds2);
+                if (bounds1[0] <= bounds2[2] && bounds2[0] <= bounds1[2] && bounds1[1] <= bounds2[3] && bounds2[1] <= bounds1[3])
+                    pairs.add(new Actor[] { actors.get(i), actors.get(j) });
+            }
+        }
+
+        // Time transformed shapes created for each test (the original path)
+        int shapeHits = 0;
+        long startTime = System.nanoTime();
+        for (int n = 0; n < aRepeatCount; n++) {
+            for (Actor[] pair : pairs)
+                if (getNewBoundsInWorld(pair[0]).intersectsShape(getNewBoundsInWorld(pair[1])))
+                    shapeHits++;
+        }
+        long shapeNanos = System.nanoTime() - startTime;
+
+        // Time cached transformed shapes
+        int cachedShapeHits = 0;
+        startTime = System.nanoTime();
+        for (int n = 0; n < aRepeatCount; n++) {
+            for (Actor[] pair : pairs)
+                if (pair[0].getBoundsInWorld().intersectsShape(pair[1].getBoundsInWorld()))
+                    cachedShapeHits++;
+        }
+        long cachedShapeNanos = System.nanoTime() - startTime;
+
+        // Time rect and separating axis tests
+        int boxHits = 0;
+        startTime = System.nanoTime();
+        for (int n = 0; n < aRepeatCount; n++) {
+            for (Actor[] pair : pairs)
+                if (pair[0].isBoundsIntersecting(pair[1]))
+                    boxHits++;
+        }
+        long boxNanos = System.nanoTime() - startTime;
+
+        // Return report
+        double testCount = Math.max((double) pairs.size() * aRepeatCount, 1);
+        return String.format("%d actors, %d%% rotated, %d candidate pairs, %d repeats\n" +
+            "Shape (new):    %.1f ns/test, %d hits\nShape (cached): %.1f ns/test, %d hits\nBox (SAT):      %.1f ns/test, %d hits",
+            anActorCount, aRotatedPercent, pairs.size(), aRepeatCount, shapeNanos / testCount, shapeHits / aRepeatCount,
+            cachedShapeNanos / testCount, cachedShapeHits / aRepeatCount, boxNanos / testCount, boxHits / aRepeatCount);
+    }
+
+    /**
+     * Returns a new actor bounds shape in world coords (as Actor.getBoundsInWorld did before caching).
+     */
+    private static Shape getNewBoundsInWorld(Actor anActor)
+    {
+        View actorView = anActor.getActorView();
+        Rect actorBounds = actorView.getBoundsLocal();
+        actorBounds.inset(.5);
+        return actorView.localToParent(actorBounds);
+    }
+}
@@ -0,0 +1,60 @@
+package greenfoot;
+import snap.view.View;
+import java.util.List;
+
+/**
+ * A SpatialIndex that returns every actor in the WorldView as a candidate (the original linear scan).
+ */
+class LinearIndex implements SpatialIndex {
+
+    // The WorldView that holds the actor views
+    private WorldView _worldView;
+
+    /**
+     * Constructor for given WorldView.
+     */
+    public LinearIndex(WorldView aWorldView)
+    {
+        _worldView = aWorldView;
+    }
+
+    /**
+     * Override to do nothing, since actors are found from WorldView children.
+     */
+    public void updateActor(Actor anActor)  { }
+
+    /**
+     * Override to do nothing, since actors are found from WorldView children.
+     */
+    public void removeActor(Actor anActor)  { }
+
+    /**
+     * Adds all actors in given layers to given list.
+     */
+    public void getActorsInRect(double aMinX, double aMinY, double aMaxX, double aMaxY, int aLayerMask, List<Actor> theActors)
+    {
+        for (View child : _worldView.getChildren()) {
+            if (child instanceof ActorView) {
+                Actor actor = ((ActorView) child)._actor;
+                if ((actor.getLayers() & aLayerMask) != 0)
+                    theActors.add(actor);
+            }
+        }
+    }
+
+    /**
+     * Adds all actors in given layers to given list.
+     */
+    public void getActorsAtPoint(double aX, double aY, int aLayerMask, List<Actor> theActors)
+    {
+        getActorsInRect(aX, aY, aX, aY, aLayerMask, theActors);
+    }
+
+    /**
+     * Adds all actors in given layers to given list.
+     */
+    public void getActorsOnSegment(double aX0, double aY0, double aX1, double aY1, int aLayerMask, List<Actor> theActors)
+    {
+        getActorsInRect(aX0, aY0, aX1, aY1, aLayerMask, theActors);
+    }
+}
@@ -0,0 +1,343 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calls act() for the actors in a World act cycle, with each run of consecutive ParallelActor actors acting at the
+ * same time across the common fork-join pool. While they act, world adds, removes and index updates are buffered and
+ * applied at a barrier after the run (adds and removes in act order), and each actor gets random numbers from its own
+ * generator seeded from the env random, so results for a fixed random seed don't depend on thread timing.
+ */
+class ParallelAct {
+
+    // The world
+    private World _world;
+
+    // Whether parallel actors are acting
+    private volatile boolean _acting;
+
+    // The world adds, removes and tag changes buffered while parallel actors act
+    private ConcurrentLinkedQueue<Command> _commands = new ConcurrentLinkedQueue<>();
+
+    // The actors changed while parallel actors act (index updates are buffered)
+    private ConcurrentLinkedQueue<Actor> _changedActors = new ConcurrentLinkedQueue<>();
+
+    // The number of parallel runs and the number of actors that acted in them
+    private long _runCount, _runActorCount;
+
+    // The context for the parallel actor acting on current thread (null if none)
+    private static final ThreadLocal<ActContext> _actContext = new ThreadLocal<>();
+
+    // The lock for actor view changes while parallel actors act (views aren't thread-safe)
+    static final Object VIEW_LOCK = new Object();
+
+    // The smallest run of parallel actors that is split across the fork-join pool (smaller runs act in caller thread)
+    static final int MIN_PARALLEL_COUNT = 32;
+
+    // The number of actors below which a parallel task stops splitting
+    private static final int TASK_SIZE = 8;
+
+    // The command kinds
+    private static final int ADD = 0, REMOVE = 1, ADD_TAG = 2, REMOVE_TAG = 3;
+
+    // A comparator to sort commands in act order (then in the order each actor made them)
+    private static final Comparator<Command> COMMAND_ORDER_COMPARATOR = Comparator
+        .comparingInt((Command cmd) -> cmd._actorIndex)
+        .thenComparingInt(cmd -> cmd._index);
+
+    /**
+     * Constructor for given world.
+     */
+    public ParallelAct(World aWorld)
+    {
+        _world = aWorld;
+    }
+
+    /**
+     * Returns whether parallel actors are acting.
+     */
+    public boolean isActing()  { return _acting; }
+
+    /**
+     * Calls act() for given actors in order, with each run of consecutive parallel actors acting at the same time.
+     */
+    public void actActors(Actor[] theActors)
+    {
+        for (int i = 0; i < theActors.length; ) {
+
+            // If actor isn't parallel, just act (unless removed or remove is buffered)
+            Actor actor = theActors[i];
+            if (!actor._actorType.isParallel()) {
+                if (actor._world == _world && !actor._removePending)
+                    actor.act();
+                i++;
+                continue;
+            }
+
+            // Get end of run of parallel actors and act them
+            int end = i + 1;
+            while (end < theActors.length && theActors[end]._actorType.isParallel())
+                end++;
+            actParallelActors(theActors, i, end);
+            i = end;
+        }
+    }
+
+    /**
+     * Calls act() at the same time for given range of parallel actors, then applies buffered world changes.
+     */
+    private void actParallelActors(Actor[] theActors, int aStart, int anEnd)
+    {
+        // Get seed for actor randoms from env random (so runs are reproducible for a fixed env seed)
+        long seed = GreenfootEnv.getRandomSeed();
+        _runCount++;
+        _runActorCount += anEnd - aStart;
+
+        // Act actors (small runs in this thread), then apply changes (even if an act failed, so world stays consistent)
+        _acting = true;
+        try {
+            if (anEnd - aStart < MIN_PARALLEL_COUNT)
+                actParallelActors(theActors, aStart, anEnd, seed);
+            else ForkJoinPool.commonPool().invoke(new ActTask(theActors, aStart, anEnd, seed));
+        }
+        finally {
+            _acting = false;
+            applyChanges();
+        }
+    }
+
+    /**
+     * Calls act() for given range of parallel actors in this thread, with an act context for each.
+     */
+    private void actParallelActors(Actor[] theActors, int aStart, int anEnd, long aSeed)
+    {
+        ActContext oldContext = _actContext.get();
+        ActContext context = new ActContext();
+        _actContext.set(context);
+        try {
+            for (int i = aStart; i < anEnd; i++) {
+                Actor actor = theActors[i];
+                if (actor._world != _world || actor._removePending)
+                    continue;
+                context._actorIndex = i;
+                context._commandCount = 0;
+                context._random.setSeed(mix(aSeed + actor._worldOrder));
+                actor.act();
+            }
+        }
+        finally { _actContext.set(oldContext); }
+    }
+
+    /**
+     * Applies world changes buffered while parallel actors acted: adds, removes and tag changes in act order, then
+     * index updates for changed actors still in world.
+     */
+    private void applyChanges()
+    {
+        // Apply commands in act order
+        if (!_commands.isEmpty()) {
+            List<Command> commands = new ArrayList<>(_commands);
+            _commands.clear();
+            commands.sort(COMMAND_ORDER_COMPARATOR);
+            for (Command command : commands)
+                command.apply(_world);
+        }
+
+        // Update indexes for changed actors in world order
+        if (!_changedActors.isEmpty()) {
+            List<Actor> changedActors = new ArrayList<>(_changedActors);
+            _changedActors.clear();
+            changedActors.sort(Actor.WORLD_ORDER_COMPARATOR);
+            for (Actor actor : changedActors) {
+                if (!actor._parallelActChanged) continue;
+                actor._parallelActChanged = false;
+                if (actor._world == _world)
+                    _world.actorBoundsChanged(actor);
+            }
+        }
+    }
+
+    /**
+     * Buffers an actor change while parallel actors act (world indexes are updated after they finish).
+     * Returns false if parallel actors aren't acting.
+     */
+    public boolean deferActorChanged(Actor anActor)
+    {
+        if (!_acting) return false;
+        if (!anActor._parallelActChanged) {
+            anActor._parallelActChanged = true;
+            _changedActors.add(anActor);
+        }
+        return true;
+    }
+
+    /**
+     * Buffers adding given actor to world at given location while parallel actors act.
+     * Returns false if parallel actors aren't acting.
+     */
+    public boolean deferAddObject(Actor anActor, int aX, int aY)
+    {
+        if (!_acting) return false;
+        addCommand(new Command(ADD, anActor, aX, aY, null));
+        return true;
+    }
+
+    /**
+     * Buffers removing given actor from world while parallel actors act.
+     * Returns false if parallel actors aren't acting.
+     */
+    public boolean deferRemoveObject(Actor anActor)
+    {
+        if (!_acting) return false;
+        addCommand(new Command(REMOVE, anActor, 0, 0, null));
+        return true;
+    }
+
+    /**
+     * Buffers a tag index update for a tag added to (or removed from) given actor while parallel actors act.
+     * Returns false if parallel actors aren't acting.
+     */
+    public boolean deferTagChanged(Actor anActor, String aTag, boolean isAdded)
+    {
+        if (!_acting) return false;
+        addCommand(new Command(isAdded ? ADD_TAG : REMOVE_TAG, anActor, 0, 0, aTag));
+        return true;
+    }
+
+    /**
+     * Adds given command with the act order of the actor acting on current thread.
+     */
+    private void addCommand(Command aCommand)
+    {
+        ActContext context = _actContext.get();
+        if (context == null)
+            throw new IllegalStateException("World changed from outside act() while parallel actors act");
+        aCommand._actorIndex = context._actorIndex;
+        aCommand._index = context._commandCount++;
+        _commands.add(aCommand);
+    }
+
+    /**
+     * Returns a report of parallel runs and actors.
+     */
+    public String getReport()
+    {
+        return String.format("ParallelAct: %d runs, %d actors, %.1f actors per run", _runCount, _runActorCount,
+            _runActorCount / (double) Math.max(_runCount, 1));
+    }
+
+    /**
+     * Returns the random for the parallel actor acting on current thread (or null if none).
+     */
+    static Random getActorRandom()
+    {
+        ActContext context = _actContext.get();
+        return context != null ? context._random : null;
+    }
+
+    /**
+     * Returns given value with bits mixed (the SplitMix64 finalizer), so nearby seeds give unrelated randoms.
+     */
+    private static long mix(long aValue)
+    {
+        long value = aValue * 0x9E3779B97F4A7C15L;
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * The state for the parallel actor acting on a thread.
+     */
+    private static class ActContext {
+
+        // The act order of actor and the number of commands it made
+        private int _actorIndex, _commandCount;
+
+        // The random for actor
+        private Random _random = new Random();
+    }
+
+    /**
+     * A buffered world add, remove or tag change.
+     */
+    private static class Command {
+
+        // The kind, actor, location and tag
+        private int _kind;
+        private Actor _actor;
+        private int _x, _y;
+        private String _tag;
+
+        // The act order of actor that made command and the order it made it
+        private int _actorIndex, _index;
+
+        /**
+         * Constructor.
+         */
+        Command(int aKind, Actor anActor, int aX, int aY, String aTag)
+        {
+            _kind = aKind;
+            _actor = anActor;
+            _x = aX;
+            _y = aY;
+            _tag = aTag;
+        }
+
+        /**
+         * Applies command to given world.
+         */
+        void apply(World aWorld)
+        {
+            switch (_kind) {
+                case ADD: aWorld.addObject(_actor, _x, _y); break;
+                case REMOVE: aWorld.removeObject(_actor); break;
+                case ADD_TAG: if (_actor._world == aWorld) aWorld.actorTagAdded(_actor, _tag); break;
+                case REMOVE_TAG: if (_actor._world == aWorld) aWorld.actorTagRemoved(_actor, _tag); break;
+            }
+        }
+    }
+
+    /**
+     * A fork-join task to act a range of parallel actors, split in halves until small.
+     */
+    private class ActTask extends RecursiveAction {
+
+        // The actors and seed for actor randoms
+        private Actor[] _actors;
+        private long _seed;
+
+        // The range of actors
+        private int _start, _end;
+
+        /**
+         * Constructor.
+         */
+        ActTask(Actor[] theActors, int aStart, int anEnd, long aSeed)
+        {
+            _actors = theActors;
+            _start = aStart;
+            _end = anEnd;
+            _seed = aSeed;
+        }
+
+        /**
+         * Override to act range, or split range.
+         */
+        @Override
+        protected void compute()
+        {
+            if (_end - _start <= TASK_SIZE) {
+                actParallelActors(_actors, _start, _end, _seed);
+                return;
+            }
+            int mid = (_start + _end) >>> 1;
+            invokeAll(new ActTask(_actors, _start, mid, _seed), new ActTask(_actors, mid, _end, _seed));
+        }
+    }
+}
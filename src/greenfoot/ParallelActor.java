@@ -0,0 +1,15 @@
+package greenfoot;
+
+/**
+ * A marker for Actor classes whose act() method is thread-safe, so that a World with parallel act enabled can call it
+ * at the same time as the act() of other parallel actors (see World.setParallelActEnabled()).
+ *
+ * A parallel actor act() may change the actor itself (location, rotation, image, collision settings and tags), read
+ * world settings, get world objects with getObjects(), getObjectsWithTag() or numberOfObjects(), get random numbers
+ * from Greenfoot.getRandomNumber() and add or remove objects (which happens after all parallel actors have acted).
+ * It must not change other actors, images it shares with other actors or the world, and must not use world
+ * collision or range queries (like isTouching() or getObjectsInRange()) or forEachObject(), which throw while actors
+ * act.
+ */
+public interface ParallelActor {
+}
@@ -0,0 +1,226 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cache of World query results for actor queries in the current act cycle, so repeated queries (like isTouching()
+ * followed by getOneIntersectingObject()) don't search again. Results are keyed by actor, query kind and class and
+ * are checked against a log of the actors changed in the cycle: a result is stale if the query actor changed, or if a
+ * changed actor was a hit or has bounds in the query rect. The log and all results are cleared each act cycle.
+ */
+class QueryCache {
+
+    // The current act cycle (results from other cycles are unused)
+    private int _cycle = 1;
+
+    // The number of actor changes in this cycle and the number when log was last cleared
+    private int _changeCount, _logStart;
+
+    // The actors changed since log start and their bounds rects (min x, min y, max x, max y)
+    private Actor[] _changedActors = new Actor[64];
+    private double[] _changedRects = new double[64 * 4];
+
+    // A reusable array for actor bounds rect
+    private double[] _boundsRect = new double[4];
+
+    // The number of lookups that found a valid result, that found no result, and that found a stale result
+    private long _hitCount, _missCount, _staleCount;
+
+    // The most actor changes logged before log is cleared (and all current results are stale)
+    private static final int MAX_LOG_SIZE = 4096;
+
+    // The query kinds
+    static final int INTERSECTING = 0;
+    static final int IN_RANGE = 1;
+
+    /**
+     * Returns the cached hits for given actor, query kind, query param and class type (null for any class), or null
+     * if not cached or stale.
+     */
+    public List<Actor> getResult(Actor anActor, int aKind, int aParam, ActorType aType)
+    {
+        // Get entry for query (just return if not found)
+        Entry entry = getEntry(anActor, aKind, aParam, aType);
+        if (entry == null) {
+            _missCount++;
+            return null;
+        }
+
+        // If stale, clear entry and return
+        if (!isEntryValid(anActor, entry)) {
+            entry._cycle = 0;
+            _staleCount++;
+            return null;
+        }
+
+        // Mark entry as checked against current log and return hits
+        entry._changeCount = _changeCount;
+        _hitCount++;
+        return entry._hits;
+    }
+
+    /**
+     * Caches the hits for given actor, query kind, query param and class type with given query rect, and returns the
+     * cached hits list.
+     */
+    public List<Actor> putResult(Actor anActor, int aKind, int aParam, ActorType aType, double[] aRect, List<Actor> theHits)
+    {
+        // Get unused entry for actor (or create and add to actor entries)
+        Entry entry = anActor._queryCacheEntry;
+        while (entry != null && entry._cache == this && entry._cycle == _cycle)
+            entry = entry._next;
+        if (entry == null) {
+            entry = new Entry();
+            entry._next = anActor._queryCacheEntry;
+            anActor._queryCacheEntry = entry;
+        }
+
+        // Set entry key, query rect and hits
+        entry._cache = this;
+        entry._cycle = _cycle;
+        entry._changeCount = _changeCount;
+        entry._kind = aKind;
+        entry._param = aParam;
+        entry._type = aType;
+        entry._layerMask = anActor.getLayerMask();
+        entry._minX = aRect[0];
+        entry._minY = aRect[1];
+        entry._maxX = aRect[2];
+        entry._maxY = aRect[3];
+        entry._hits.clear();
+        entry._hits.addAll(theHits);
+        return entry._hits;
+    }
+
+    /**
+     * Called when an actor location, rotation, image, collision settings or layers change, or actor is removed.
+     */
+    public void actorChanged(Actor anActor)
+    {
+        // If log is full, clear it (results checked against older changes become stale)
+        int logSize = _changeCount - _logStart;
+        if (logSize == MAX_LOG_SIZE) {
+            Arrays.fill(_changedActors, null);
+            _logStart = _changeCount;
+            logSize = 0;
+        }
+
+        // If log arrays are full, grow them
+        if (logSize == _changedActors.length) {
+            _changedActors = Arrays.copyOf(_changedActors, logSize * 2);
+            _changedRects = Arrays.copyOf(_changedRects, logSize * 2 * 4);
+        }
+
+        // Add actor and bounds rect to log
+        anActor.getBoundsRectInWorld(_boundsRect);
+        _changedActors[logSize] = anActor;
+        System.arraycopy(_boundsRect, 0, _changedRects, logSize * 4, 4);
+        _changeCount++;
+    }
+
+    /**
+     * Clears results and change log for a new act cycle.
+     */
+    public void startCycle()
+    {
+        Arrays.fill(_changedActors, 0, _changeCount - _logStart, null);
+        _changeCount = _logStart = 0;
+        _cycle++;
+    }
+
+    /**
+     * Returns the number of lookups that found a valid result.
+     */
+    public long getHitCount()  { return _hitCount; }
+
+    /**
+     * Returns the number of lookups that found no result or a stale result.
+     */
+    public long getMissCount()  { return _missCount + _staleCount; }
+
+    /**
+     * Returns a report of lookup hits and misses.
+     */
+    public String getReport()
+    {
+        long lookupCount = _hitCount + _missCount + _staleCount;
+        return String.format("QueryCache: %d lookups, %d hits, %d misses, %d stale, %.1f%% hit rate",
+            lookupCount, _hitCount, _missCount, _staleCount, _hitCount * 100d / Math.max(lookupCount, 1));
+    }
+
+    /**
+     * Returns the entry in current cycle for given actor and query key.
+     */
+    private Entry getEntry(Actor anActor, int aKind, int aParam, ActorType aType)
+    {
+        int layerMask = anActor.getLayerMask();
+        for (Entry entry = anActor._queryCacheEntry; entry != null; entry = entry._next) {
+            if (entry._cache == this && entry._cycle == _cycle && entry._kind == aKind && entry._param == aParam &&
+                entry._type == aType && entry._layerMask == layerMask)
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether no actor changed since entry was checked that changes entry result.
+     */
+    private boolean isEntryValid(Actor anActor, Entry anEntry)
+    {
+        // If log was cleared since entry was checked, return false
+        if (anEntry._changeCount < _logStart)
+            return false;
+
+        // Iterate over changes since entry was checked
+        List<Actor> hits = anEntry._hits;
+        for (int i = anEntry._changeCount - _logStart, iMax = _changeCount - _logStart; i < iMax; i++) {
+
+            // If changed actor is query actor, return false
+            Actor changedActor = _changedActors[i];
+            if (changedActor == anActor)
+                return false;
+
+            // If changed actor bounds rect intersects query rect, return false
+            int rectIndex = i * 4;
+            if (_changedRects[rectIndex] <= anEntry._maxX && _changedRects[rectIndex + 2] >= anEntry._minX &&
+                _changedRects[rectIndex + 1] <= anEntry._maxY && _changedRects[rectIndex + 3] >= anEntry._minY)
+                return false;
+
+            // If changed actor is a hit, return false
+            for (int j = 0, jMax = hits.size(); j < jMax; j++)
+                if (hits.get(j) == changedActor)
+                    return false;
+        }
+
+        // Return true
+        return true;
+    }
+
+    /**
+     * A cached query result for an actor (actor entries are a linked list).
+     */
+    static class Entry {
+
+        // The cache and act cycle this entry is from
+        private QueryCache _cache;
+        private int _cycle;
+
+        // The cache change count when entry was last checked
+        private int _changeCount;
+
+        // The query kind, param, class type and layer mask
+        private int _kind, _param;
+        private ActorType _type;
+        private int _layerMask;
+
+        // The query rect (actors outside it can't be hits)
+        private double _minX, _minY, _maxX, _maxY;
+
+        // The hits
+        private List<Actor> _hits = new ArrayList<>();
+
+        // The next entry for actor
+        private Entry _next;
+    }
+}
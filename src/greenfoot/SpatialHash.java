@@ -0,0 +1,269 @@
+package greenfoot;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid of actor buckets used by World to find collision candidates without visiting every actor.
+ * Actors are stored in every cell their bounds overlap. Bounds outside the world are clamped to edge cells.
+ * Each collision layer has its own set of buckets, so queries only visit the layers in the query layer mask.
+ */
+class SpatialHash implements SpatialIndex {
+
+    // The size of a grid cell in world pixels
+    private double _gridSize;
+
+    // The number of grid columns and rows
+    private int _cols, _rows;
+
+    // The actors in each grid cell for each layer (created when layer is first used)
+    private Actor[][][] _layerBuckets = new Actor[LAYER_COUNT][][];
+
+    // The number of actors in each grid cell for each layer
+    private int[][] _layerBucketCounts = new int[LAYER_COUNT][];
+
+    // The layers that have buckets
+    private int _usedLayers;
+
+    // The current query mark, used to visit each candidate actor only once per query
+    private int _queryMark;
+
+    // A reusable array for actor bounds rect
+    private double[] _boundsRect = new double[4];
+
+    // The number of layers
+    private static final int LAYER_COUNT = 32;
+
+    /**
+     * Constructor for given world size in pixels and grid size.
+     */
+    public SpatialHash(double aWidth, double aHeight, double aGridSize)
+    {
+        _gridSize = aGridSize;
+        _cols = Math.max((int) Math.ceil(aWidth / aGridSize), 1);
+        _rows = Math.max((int) Math.ceil(aHeight / aGridSize), 1);
+    }
+
+    /**
+     * Returns the grid size.
+     */
+    public double getGridSize()  { return _gridSize; }
+
+    /**
+     * Adds or updates given actor for its current bounds in world and layers.
+     */
+    public void updateActor(Actor anActor)
+    {
+        // Get actor bounds cell range
+        double[] bounds = _boundsRect;
+        anActor.getBoundsRectInWorld(bounds);
+        int col0 = getCol(bounds[0]);
+        int row0 = getRow(bounds[1]);
+        int col1 = getCol(bounds[2]);
+        int row1 = getRow(bounds[3]);
+        int layers = anActor.getLayers();
+
+        // If actor already in those cells and layers, just return
+        if (anActor._indexCol0 == col0 && anActor._indexRow0 == row0 && anActor._indexCol1 == col1 && anActor._indexRow1 == row1 &&
+            anActor._indexLayers == layers)
+            return;
+
+        // Remove from old cells and add to new cells for each layer
+        removeActor(anActor);
+        for (int layerBits = layers; layerBits != 0; layerBits &= layerBits - 1) {
+            int layer = Integer.numberOfTrailingZeros(layerBits);
+            for (int row = row0; row <= row1; row++)
+                for (int col = col0; col <= col1; col++)
+                    addActorToBucket(anActor, layer, row * _cols + col);
+        }
+
+        // Set actor cell range and layers
+        anActor._indexCol0 = col0;
+        anActor._indexRow0 = row0;
+        anActor._indexCol1 = col1;
+        anActor._indexRow1 = row1;
+        anActor._indexLayers = layers;
+    }
+
+    /**
+     * Removes given actor.
+     */
+    public void removeActor(Actor anActor)
+    {
+        // If actor not in grid, just return
+        if (anActor._indexCol0 < 0)
+            return;
+
+        // Remove from cells for each layer
+        for (int layerBits = anActor._indexLayers; layerBits != 0; layerBits &= layerBits - 1) {
+            int layer = Integer.numberOfTrailingZeros(layerBits);
+            for (int row = anActor._indexRow0; row <= anActor._indexRow1; row++)
+                for (int col = anActor._indexCol0; col <= anActor._indexCol1; col++)
+                    removeActorFromBucket(anActor, layer, row * _cols + col);
+        }
+
+        // Clear actor cell range and layers
+        anActor._indexCol0 = anActor._indexRow0 = anActor._indexCol1 = anActor._indexRow1 = -1;
+        anActor._indexLayers = 0;
+    }
+
+    /**
+     * Adds the actors in given layers with cells that overlap given rect to given list (each actor only once).
+     */
+    public void getActorsInRect(double aMinX, double aMinY, double aMaxX, double aMaxY, int aLayerMask, List<Actor> theActors)
+    {
+        int col0 = getCol(aMinX);
+        int row0 = getRow(aMinY);
+        int col1 = getCol(aMaxX);
+        int row1 = getRow(aMaxY);
+        int mark = ++_queryMark;
+
+        // Iterate over layers and cells and add actors not yet seen in this query
+        for (int layerBits = aLayerMask & _usedLayers; layerBits != 0; layerBits &= layerBits - 1) {
+            int layer = Integer.numberOfTrailingZeros(layerBits);
+            for (int row = row0; row <= row1; row++)
+                for (int col = col0; col <= col1; col++)
+                    addBucketActors(layer, row * _cols + col, mark, theActors);
+        }
+    }
+
+    /**
+     * Adds the actors in given layers in the cell that contains given point to given list (each actor only once).
+     */
+    public void getActorsAtPoint(double aX, double aY, int aLayerMask, List<Actor> theActors)
+    {
+        int bucketIndex = getRow(aY) * _cols + getCol(aX);
+        int mark = ++_queryMark;
+        for (int layerBits = aLayerMask & _usedLayers; layerBits != 0; layerBits &= layerBits - 1)
+            addBucketActors(Integer.numberOfTrailingZeros(layerBits), bucketIndex, mark, theActors);
+    }
+
+    /**
+     * Adds the actors in given layers in cells that given line segment passes through to given list (each actor only
+     * once). Cells are walked in order from segment start to end (DDA), with the segment clipped to the grid: parts
+     * outside the grid walk the edge cells (where actors outside world are stored), so the cost is proportional to
+     * segment length inside the grid, no matter how far the segment reaches outside.
+     */
+    public void getActorsOnSegment(double aX0, double aY0, double aX1, double aY1, int aLayerMask, List<Actor> theActors)
+    {
+        // If no actors in given layers, just return
+        int layerMask = aLayerMask & _usedLayers;
+        if (layerMask == 0)
+            return;
+
+        // Get start and end cells clamped to grid (steps only happen at grid inner cell boundaries)
+        int col = getCol(aX0), row = getRow(aY0);
+        int endCol = getCol(aX1), endRow = getRow(aY1);
+        int cellCount = Math.abs(endCol - col) + Math.abs(endRow - row) + 1;
+
+        // Get step direction, segment fraction to next cell boundary and segment fraction per cell for x and y
+        double dx = aX1 - aX0, dy = aY1 - aY0;
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+        double nextX = dx != 0 ? ((col + (dx > 0 ? 1 : 0)) * _gridSize - aX0) / dx : Double.POSITIVE_INFINITY;
+        double nextY = dy != 0 ? ((row + (dy > 0 ? 1 : 0)) * _gridSize - aY0) / dy : Double.POSITIVE_INFINITY;
+        double deltaX = dx != 0 ? _gridSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double deltaY = dy != 0 ? _gridSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        int mark = ++_queryMark;
+
+        // Iterate over cells along segment and add actors not yet seen in this query
+        for (int i = 0; i < cellCount; i++) {
+
+            // Add actors in cell for each layer
+            int bucketIndex = row * _cols + col;
+            for (int layerBits = layerMask; layerBits != 0; layerBits &= layerBits - 1)
+                addBucketActors(Integer.numberOfTrailingZeros(layerBits), bucketIndex, mark, theActors);
+
+            // Step to next cell across nearest boundary (never past end cell column or row)
+            if (row == endRow || col != endCol && nextX < nextY) {
+                col += stepX;
+                nextX += deltaX;
+            }
+            else {
+                row += stepY;
+                nextY += deltaY;
+            }
+        }
+    }
+
+    /**
+     * Adds the actors in bucket at given layer and index that aren't marked with given query mark to given list.
+     */
+    private void addBucketActors(int aLayer, int bucketIndex, int aMark, List<Actor> theActors)
+    {
+        Actor[] bucket = _layerBuckets[aLayer][bucketIndex];
+        for (int i = 0, iMax = _layerBucketCounts[aLayer][bucketIndex]; i < iMax; i++) {
+            Actor actor = bucket[i];
+            if (actor._indexMark != aMark) {
+                actor._indexMark = aMark;
+                theActors.add(actor);
+            }
+        }
+    }
+
+    /**
+     * Returns the grid column for given world x (clamped to grid).
+     */
+    private int getCol(double aX)
+    {
+        return clampCol((int) Math.floor(aX / _gridSize));
+    }
+
+    /**
+     * Returns the grid row for given world y (clamped to grid).
+     */
+    private int getRow(double aY)
+    {
+        return clampRow((int) Math.floor(aY / _gridSize));
+    }
+
+    /**
+     * Returns given grid column clamped to grid.
+     */
+    private int clampCol(int aCol)  { return aCol < 0 ? 0 : aCol >= _cols ? _cols - 1 : aCol; }
+
+    /**
+     * Returns given grid row clamped to grid.
+     */
+    private int clampRow(int aRow)  { return aRow < 0 ? 0 : aRow >= _rows ? _rows - 1 : aRow; }
+
+    /**
+     * Adds an actor to bucket at given layer and index (creates layer buckets if first use of layer).
+     */
+    private void addActorToBucket(Actor anActor, int aLayer, int bucketIndex)
+    {
+        // Get buckets for layer (create if needed)
+        Actor[][] buckets = _layerBuckets[aLayer];
+        if (buckets == null) {
+            buckets = _layerBuckets[aLayer] = new Actor[_cols * _rows][];
+            _layerBucketCounts[aLayer] = new int[_cols * _rows];
+            _usedLayers |= 1 << aLayer;
+        }
+
+        // Add actor to bucket
+        Actor[] bucket = buckets[bucketIndex];
+        int count = _layerBucketCounts[aLayer][bucketIndex];
+        if (bucket == null)
+            bucket = buckets[bucketIndex] = new Actor[4];
+        else if (count == bucket.length)
+            bucket = buckets[bucketIndex] = Arrays.copyOf(bucket, count * 2);
+        bucket[count] = anActor;
+        _layerBucketCounts[aLayer][bucketIndex] = count + 1;
+    }
+
+    /**
+     * Removes an actor from bucket at given layer and index (swaps last actor into its slot).
+     */
+    private void removeActorFromBucket(Actor anActor, int aLayer, int bucketIndex)
+    {
+        Actor[] bucket = _layerBuckets[aLayer][bucketIndex];
+        int[] bucketCounts = _layerBucketCounts[aLayer];
+        int count = bucketCounts[bucketIndex];
+        for (int i = 0; i < count; i++) {
+            if (bucket[i] == anActor) {
+                bucket[i] = bucket[count - 1];
+                bucket[count - 1] = null;
+                bucketCounts[bucketIndex] = count - 1;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package greenfoot;
+import java.util.List;
+
+/**
+ * An interface for structures that World uses to find candidate actors near a point or rect in world coords.
+ * Candidates are a superset of the actors whose bounds overlap the point or rect; World does the exact tests.
+ * Queries take a mask of collision layers, which indexes may use to skip actors in other layers.
+ */
+interface SpatialIndex {
+
+    /**
+     * Adds or updates given actor for its current bounds in world.
+     */
+    void updateActor(Actor anActor);
+
+    /**
+     * Removes given actor.
+     */
+    void removeActor(Actor anActor);
+
+    /**
+     * Adds the actors in given layers that may overlap given rect to given list (each actor only once).
+     */
+    void getActorsInRect(double aMinX, double aMinY, double aMaxX, double aMaxY, int aLayerMask, List<Actor> theActors);
+
+    /**
+     * Adds the actors in given layers that may contain given point to given list (each actor only once).
+     */
+    void getActorsAtPoint(double aX, double aY, int aLayerMask, List<Actor> theActors);
+
+    /**
+     * Adds the actors in given layers that may overlap given line segment to given list (each actor only once).
+     */
+    void getActorsOnSegment(double aX0, double aY0, double aX1, double aY1, int aLayerMask, List<Actor> theActors);
+}
@@ -0,0 +1,198 @@
+package greenfoot;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds all pairs of touching actors in one pass, by sorting actors on bounds min x and sweeping along x.
+ * The sorted order is kept between passes, so actors from the last pass are insertion sorted (nearly linear when
+ * actors move a little), while new actors (all actors, in the first pass) are sorted in O(n log n) and merged in.
+ */
+class SweepAndPrune {
+
+    // The actors sorted by bounds min x (from last pass)
+    private Actor[] _actors = new Actor[0];
+
+    // The number of actors
+    private int _actorCount;
+
+    // The actor bounds (in sorted order)
+    private double[] _minX = new double[0], _minY = new double[0], _maxX = new double[0], _maxY = new double[0];
+
+    // The last pass number used by any sweep and prune, used to mark actors still in world (so actor marks from
+    // another world's sweep and prune never match)
+    private static final AtomicInteger _lastPassNumber = new AtomicInteger();
+
+    // A reusable array for actor bounds rect
+    private double[] _boundsRect = new double[4];
+
+    // The most insertion sort moves per actor before kept actors are sorted like new actors (they moved too far)
+    private static final int MAX_SORT_MOVES_PER_ACTOR = 8;
+
+    /**
+     * Adds the touching pairs for given actors (in world order) to given list.
+     */
+    public void findTouchingPairs(List<Actor> theActors, List<ActorPair> thePairs)
+    {
+        // Update sorted actors for current world actors and get bounds
+        int keptCount = updateActors(theActors);
+        double[] bounds = _boundsRect;
+        for (int i = 0; i < _actorCount; i++) {
+            _actors[i].getBoundsRectInWorld(bounds);
+            _minX[i] = bounds[0];
+            _minY[i] = bounds[1];
+            _maxX[i] = bounds[2];
+            _maxY[i] = bounds[3];
+        }
+
+        // Sort actors and bounds by min x
+        sortActors(keptCount);
+
+        // Sweep: For each actor, check actors that start before it ends on x axis
+        for (int i = 0; i < _actorCount; i++) {
+            Actor actor = _actors[i];
+            double maxX = _maxX[i];
+            for (int j = i + 1; j < _actorCount && _minX[j] <= maxX; j++) {
+
+                // If bounds don't overlap on y axis, skip
+                if (_maxY[j] < _minY[i] || _minY[j] > _maxY[i])
+                    continue;
+
+                // If actors find each other by layer and intersect, add pair (in world order)
+                Actor otherActor = _actors[j];
+                if (actor.isLayerMatch(otherActor) && otherActor.isLayerMatch(actor) && actor.intersects(otherActor)) {
+                    ActorPair pair = actor._worldOrder < otherActor._worldOrder ? new ActorPair(actor, otherActor) :
+                        new ActorPair(otherActor, actor);
+                    thePairs.add(pair);
+                }
+            }
+        }
+
+        // Sort pairs in world order, so results don't depend on positions
+        thePairs.sort(ActorPair.WORLD_ORDER_COMPARATOR);
+    }
+
+    /**
+     * Updates sorted actors array to remove actors no longer in world and add new actors at end.
+     * Returns the number of actors kept from last pass (at start of array).
+     */
+    private int updateActors(List<Actor> theActors)
+    {
+        // Mark current actors
+        int passNumber = _lastPassNumber.incrementAndGet();
+        for (Actor actor : theActors)
+            actor._sweepPass = passNumber;
+
+        // Keep actors from last pass that are still marked (and mark as kept)
+        int actorCount = 0;
+        for (int i = 0; i < _actorCount; i++) {
+            Actor actor = _actors[i];
+            if (actor._sweepPass == passNumber) {
+                actor._sweepPass = -passNumber;
+                _actors[actorCount++] = actor;
+            }
+        }
+
+        // Grow arrays if needed
+        int keptCount = actorCount;
+        int newCount = theActors.size();
+        if (newCount > _actors.length) {
+            int capacity = Math.max(newCount, _actors.length * 2);
+            _actors = Arrays.copyOf(_actors, capacity);
+            _minX = new double[capacity];
+            _minY = new double[capacity];
+            _maxX = new double[capacity];
+            _maxY = new double[capacity];
+        }
+
+        // Add new actors (still marked and not kept)
+        for (Actor actor : theActors) {
+            if (actor._sweepPass == passNumber)
+                _actors[actorCount++] = actor;
+        }
+
+        // Clear remaining slots and set count
+        Arrays.fill(_actors, actorCount, _actorCount > actorCount ? _actorCount : actorCount, null);
+        _actorCount = actorCount;
+        return keptCount;
+    }
+
+    /**
+     * Sorts actors and bounds by min x, given the number of actors kept from last pass (at start, nearly sorted).
+     */
+    private void sortActors(int aKeptCount)
+    {
+        // Insertion sort kept actors (if they moved too far, sort them like new actors)
+        int keptCount = insertionSortActors(aKeptCount) ? aKeptCount : 0;
+        if (keptCount == _actorCount)
+            return;
+
+        // Sort new actor indexes by min x
+        double[] minXs = _minX;
+        Integer[] newIndexes = new Integer[_actorCount - keptCount];
+        for (int i = 0; i < newIndexes.length; i++)
+            newIndexes[i] = keptCount + i;
+        Arrays.sort(newIndexes, Comparator.comparingDouble(index -> minXs[index]));
+
+        // Merge kept and new indexes and reorder actors and bounds
+        int[] order = new int[_actorCount];
+        int keptIndex = 0, newIndex = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (newIndex == newIndexes.length || keptIndex < keptCount && minXs[keptIndex] <= minXs[newIndexes[newIndex]])
+                order[i] = keptIndex++;
+            else order[i] = newIndexes[newIndex++];
+        }
+        reorderActors(order);
+    }
+
+    /**
+     * Insertion sorts given number of actors (at start) and bounds by min x. Returns false if stopped because actors
+     * needed too many moves.
+     */
+    private boolean insertionSortActors(int aCount)
+    {
+        long movesLeft = (long) aCount * MAX_SORT_MOVES_PER_ACTOR;
+        for (int i = 1; i < aCount; i++) {
+            Actor actor = _actors[i];
+            double minX = _minX[i], minY = _minY[i], maxX = _maxX[i], maxY = _maxY[i];
+            int j = i - 1;
+            while (j >= 0 && _minX[j] > minX) {
+                _actors[j + 1] = _actors[j];
+                _minX[j + 1] = _minX[j];
+                _minY[j + 1] = _minY[j];
+                _maxX[j + 1] = _maxX[j];
+                _maxY[j + 1] = _maxY[j];
+                j--;
+                movesLeft--;
+            }
+            _actors[j + 1] = actor;
+            _minX[j + 1] = minX;
+            _minY[j + 1] = minY;
+            _maxX[j + 1] = maxX;
+            _maxY[j + 1] = maxY;
+            if (movesLeft < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reorders actors and bounds so that each index gets the actor at given index in given order.
+     */
+    private void reorderActors(int[] anOrder)
+    {
+        int count = anOrder.length;
+        Actor[] actors = Arrays.copyOf(_actors, count);
+        double[] minX = Arrays.copyOf(_minX, count), minY = Arrays.copyOf(_minY, count);
+        double[] maxX = Arrays.copyOf(_maxX, count), maxY = Arrays.copyOf(_maxY, count);
+        for (int i = 0; i < count; i++) {
+            int index = anOrder[i];
+            _actors[i] = actors[index];
+            _minX[i] = minX[index];
+            _minY[i] = minY[index];
+            _maxX[i] = maxX[index];
+            _maxY[i] = maxY[index];
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package greenfoot;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the actors in a World by tag, kept in world order and updated as actors are added, removed or tagged.
+ * Tags are also given dense integer ids (shared by all worlds), so actors can test tags in queries with a bit test.
+ */
+class TagIndex {
+
+    // The actors for each tag (in world order)
+    private Map<String, List<Actor>> _actorsByTag = new HashMap<>();
+
+    // The ids for tags
+    private static final Map<String, Integer> _tagIds = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an actor with its tags.
+     */
+    public void addActor(Actor anActor)
+    {
+        for (String tag : anActor.getTags())
+            addActorTag(anActor, tag);
+    }
+
+    /**
+     * Removes an actor with its tags.
+     */
+    public void removeActor(Actor anActor)
+    {
+        for (String tag : anActor.getTags())
+            removeActorTag(anActor, tag);
+    }
+
+    /**
+     * Removes given actors (marked batch remove) with one pass over the actors of each of their tags.
+     */
+    public void removeActors(List<Actor> theActors)
+    {
+        // Get tags of actors
+        Set<String> tags = new HashSet<>();
+        for (Actor actor : theActors)
+            tags.addAll(actor.getTags());
+
+        // Remove marked actors from actors of each tag
+        for (String tag : tags) {
+            List<Actor> actors = _actorsByTag.get(tag);
+            if (actors != null)
+                actors.removeIf(actor -> actor._batchRemove);
+        }
+    }
+
+    /**
+     * Adds an actor to actors for given tag.
+     */
+    public void addActorTag(Actor anActor, String aTag)
+    {
+        List<Actor> actors = _actorsByTag.computeIfAbsent(aTag, tag -> new ArrayList<>());
+        int index = Actor.getWorldOrderIndex(actors, anActor._worldOrder);
+        if (index < 0)
+            actors.add(-index - 1, anActor);
+    }
+
+    /**
+     * Removes an actor from actors for given tag.
+     */
+    public void removeActorTag(Actor anActor, String aTag)
+    {
+        List<Actor> actors = _actorsByTag.get(aTag);
+        if (actors == null) return;
+        int index = Actor.getWorldOrderIndex(actors, anActor._worldOrder);
+        if (index >= 0)
+            actors.remove(index);
+    }
+
+    /**
+     * Returns the number of actors with given tag.
+     */
+    public int getActorCount(String aTag)
+    {
+        List<Actor> actors = _actorsByTag.get(aTag);
+        return actors != null ? actors.size() : 0;
+    }
+
+    /**
+     * Adds the actors with given tag that are instances of given class (optional) to given list (in world order).
+     */
+    public void getActors(String aTag, Class<?> aClass, List<Actor> theActors)
+    {
+        // Get actors for tag (just return if none)
+        List<Actor> actors = _actorsByTag.get(aTag);
+        if (actors == null) return;
+
+        // If no class, add all, otherwise add actors of class
+        if (aClass == null || aClass == Actor.class) {
+            theActors.addAll(actors);
+            return;
+        }
+        ActorType classType = ActorType.get(aClass);
+        for (int i = 0, iMax = actors.size(); i < iMax; i++) {
+            Actor actor = actors.get(i);
+            if (actor._actorType.isInstanceOf(classType))
+                theActors.add(actor);
+        }
+    }
+
+    /**
+     * Returns the id for given tag (or -1 if no actor has ever been given tag, so queries don't assign ids).
+     */
+    public static int findTagId(String aTag)
+    {
+        Integer tagId = _tagIds.get(aTag);
+        return tagId != null ? tagId : -1;
+    }
+
+    /**
+     * Returns the id for given tag (assigned when first seen, so only used when adding tags).
+     */
+    public static int getTagId(String aTag)
+    {
+        Integer tagId = _tagIds.get(aTag);
+        if (tagId != null)
+            return tagId;
+        synchronized (_tagIds) {
+            tagId = _tagIds.get(aTag);
+            if (tagId == null)
+                _tagIds.put(aTag, tagId = _tagIds.size());
+            return tagId;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package greenfoot;
+import java.util.Random;
+
+/**
+ * A microbenchmark that times the class tests in World queries and paint order with Class.isInstance against
+ * the ActorType bitset test, for actors of a small class hierarchy and query classes that are superclasses,
+ * interfaces and unrelated classes. Call getReport() with actor count and repeat count.
+ */
+class TypeMatchBenchmark {
+
+    /**
+     * Returns a report of class test times for given actor count and repeat count.
+     */
+    public static String getReport(int anActorCount, int aRepeatCount)
+    {
+        // Create actors of random classes
+        Random random = new Random(1);
+        Actor[] actors = new Actor[anActorCount];
+        for (int i = 0; i < anActorCount; i++) {
+            switch (random.nextInt(4)) {
+                case 0: actors[i] = new Rock(); break;
+                case 1: actors[i] = new Crab(); break;
+                case 2: actors[i] = new Lobster(); break;
+                default: actors[i] = new Worm(); break;
+            }
+        }
+
+        // Get query classes and types
+        Class<?>[] queryClasses = { Actor.class, Animal.class, Crab.class, Edible.class, Hunter.class, World.class };
+        ActorType[] queryTypes = new ActorType[queryClasses.length];
+        for (int i = 0; i < queryClasses.length; i++)
+            queryTypes[i] = ActorType.get(queryClasses[i]);
+
+        // Time Class.isInstance
+        int instanceHits = 0;
+        long startTime = System.nanoTime();
+        for (int n = 0; n < aRepeatCount; n++) {
+            for (Class<?> queryClass : queryClasses)
+                for (Actor actor : actors)
+                    if (queryClass.isInstance(actor))
+                        instanceHits++;
+        }
+        long instanceNanos = System.nanoTime() - startTime;
+
+        // Time ActorType bitset test
+        int typeHits = 0;
+        startTime = System.nanoTime();
+        for (int n = 0; n < aRepeatCount; n++) {
+            for (ActorType queryType : queryTypes)
+                for (Actor actor : actors)
+                    if (actor._actorType.isInstanceOf(queryType))
+                        typeHits++;
+        }
+        long typeNanos = System.nanoTime() - startTime;
+
+        // Return report
+        double testCount = Math.max((double) anActorCount * queryClasses.length * aRepeatCount, 1);
+        return String.format("%d actors, %d query classes, %d repeats\n" +
+            "Class.isInstance: %.2f ns/test, %d hits\nActorType:        %.2f ns/test, %d hits",
+            anActorCount, queryClasses.length, aRepeatCount, instanceNanos / testCount, instanceHits / aRepeatCount,
+            typeNanos / testCount, typeHits / aRepeatCount);
+    }
+
+    // Sample actor classes and interfaces
+    private interface Edible { }
+    private interface Hunter { }
+    private static class Rock extends Actor { }
+    private static class Animal extends Actor { }
+    private static class Crab extends Animal implements Edible, Hunter { }
+    private static class Lobster extends Animal implements Hunter { }
+    private static class Worm extends Animal implements Edible { }
+}
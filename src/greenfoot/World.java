@@ -1,6 +1,8 @@
 package greenfoot;
 import java.util.*;
+import java.util.function.Consumer;
 import snap.geom.Point;
+import snap.geom.Rect;
 import snap.geom.Shape;
 import snap.view.*;
 
@@ -28,6 +30,69 @@ public class World {
     // The WorldView
     protected WorldView _worldView;
 
+    // The type of spatial index used to find actors near a point or shape
+    private IndexType _indexType;
+
+    // The spatial index used to find actors near a point or shape
+    private SpatialIndex _spatialIndex;
+
+    // The index of actors by world cell, used to find actors at cell locations (null if cell size is 1)
+    private CellIndex _cellIndex;
+
+    // The registry of actors by class
+    private ActorRegistry _actorRegistry = new ActorRegistry();
+
+    // The index of actors by tag
+    private TagIndex _tagIndex = new TagIndex();
+
+    // The touching actor pairs, updated once per act cycle for actors that changed (null if not enabled)
+    private ContactSet _contactSet;
+
+    // The sweep and prune that finds touching pairs when asked if touching pairs not enabled (kept to reuse sort order)
+    private SweepAndPrune _sweepAndPrune;
+
+    // The cache of actor query results in current act cycle (null if not enabled)
+    private QueryCache _queryCache;
+
+    // The runner that acts parallel actors at the same time (null if not enabled)
+    private ParallelAct _parallelAct;
+
+    // The buffer of adds and removes made in act phase (null if not enabled)
+    private CommandBuffer _commandBuffer;
+
+    // The act order buckets (null if act order not set)
+    private ActOrder _actOrder;
+
+    // Reusable actor lists for query candidates and hits, and the number currently borrowed
+    private List<List<Actor>> _actorLists = new ArrayList<>();
+    private int _actorListCount;
+
+    // A reusable array for actor bounds rect (min x, min y, max x, max y)
+    private double[] _boundsRect = new double[4];
+
+    // The order to assign to the next added actor
+    private int _nextActorOrder;
+
+    // The default size of a spatial hash grid cell in world pixels (or world cell size, if larger)
+    private static final int SPATIAL_HASH_GRID_SIZE = 64;
+
+    // The largest search radius for nearest queries (in cells), so search rects can't overflow
+    private static final int MAX_SEARCH_RADIUS = Integer.MAX_VALUE / 4;
+
+    // The most actors with a tag for tagged range queries to test them all instead of searching the range
+    private static final int TAG_SCAN_COUNT = 64;
+
+    /**
+     * The types of spatial index that a World can use to find actors for collision queries.
+     * Grid is a uniform grid of cells and works best for actors of similar size. Tree is a dynamic bounding
+     * box hierarchy and works best for actors of very uneven size. Linear tests every actor.
+     */
+    public enum IndexType { Grid, Tree, Linear }
+
+    // A comparator to sort actors by distance in last distance sorted query (then world order)
+    private static final Comparator<Actor> DISTANCE_COMPARATOR = Comparator.<Actor>comparingDouble(actor -> actor._queryDistance)
+        .thenComparing(Actor.WORLD_ORDER_COMPARATOR);
+
     /**
      * Constructor.
      */
@@ -40,6 +105,14 @@ public class World {
      * Constructor.
      */
     public World(int aW, int aH, int aCellSize, boolean isBounded)
+    {
+        this(aW, aH, aCellSize, isBounded, IndexType.Grid);
+    }
+
+    /**
+     * Constructor with spatial index type.
+     */
+    public World(int aW, int aH, int aCellSize, boolean isBounded, IndexType anIndexType)
     {
         // Set any project class
         if (GreenfootEnv._worldClass == null)
@@ -55,6 +128,12 @@ public class World {
         _worldView = new WorldView(this);
         _worldView.setSize(_width * _cellSize, _height * _cellSize);
 
+        // Create spatial index
+        _indexType = anIndexType;
+        _spatialIndex = createSpatialIndex(anIndexType);
+        if (_cellSize > 1)
+            _cellIndex = new CellIndex(_width, _height);
+
         // Set background image
         GreenfootImage backgroundImage = Greenfoot.env().getGreenfootImageForClass(getClass());
         if (backgroundImage == null)
@@ -67,6 +146,331 @@ public class World {
      */
     public WorldView getWorldView()  { return _worldView; }
 
+    /**
+     * Returns the spatial index type.
+     */
+    public IndexType getIndexType()  { return _indexType; }
+
+    /**
+     * Sets the spatial index type.
+     */
+    public void setIndexType(IndexType anIndexType)
+    {
+        if (anIndexType == _indexType) return;
+
+        // Create new index (keeping benchmark, if enabled)
+        SpatialIndex oldIndex = _spatialIndex;
+        SpatialIndex newIndex = createSpatialIndex(anIndexType);
+        if (oldIndex instanceof IndexBenchmark)
+            newIndex = new IndexBenchmark(newIndex, new LinearIndex(_worldView));
+
+        // Move actors from old index to new index
+        for (Actor actor : getObjects(Actor.class)) {
+            oldIndex.removeActor(actor);
+            newIndex.updateActor(actor);
+        }
+
+        // Set new index
+        _indexType = anIndexType;
+        _spatialIndex = newIndex;
+    }
+
+    /**
+     * Returns whether spatial index benchmark is enabled.
+     */
+    public boolean isIndexBenchmark()  { return _spatialIndex instanceof IndexBenchmark; }
+
+    /**
+     * Sets whether to time spatial index updates and queries and compare them to a linear scan of all actors.
+     */
+    public void setIndexBenchmark(boolean aValue)
+    {
+        if (aValue == isIndexBenchmark()) return;
+        if (aValue)
+            _spatialIndex = new IndexBenchmark(_spatialIndex, new LinearIndex(_worldView));
+        else _spatialIndex = ((IndexBenchmark) _spatialIndex).getIndex();
+    }
+
+    /**
+     * Returns the spatial index benchmark report (if benchmark enabled).
+     */
+    public String getIndexBenchmarkReport()
+    {
+        if (_spatialIndex instanceof IndexBenchmark)
+            return ((IndexBenchmark) _spatialIndex).getReport();
+        return "Index benchmark not enabled";
+    }
+
+    /**
+     * Returns whether world finds touching actor pairs once per act cycle.
+     */
+    public boolean isTouchingPairsEnabled()  { return _contactSet != null; }
+
+    /**
+     * Sets whether world finds touching actor pairs once per act cycle (before actors act) and calls actor contact handlers.
+     * Pairs are kept between act cycles and only re-tested for actors that changed.
+     */
+    public void setTouchingPairsEnabled(boolean aValue)
+    {
+        if (aValue == isTouchingPairsEnabled()) return;
+
+        // If disabling, clear actor pairs
+        List<Actor> actors = getObjects(Actor.class);
+        if (!aValue) {
+            _contactSet.clearActors(actors);
+            _contactSet = null;
+            return;
+        }
+
+        // Create contact set with all actors changed (and clear sweep and prune, since it is no longer used)
+        _sweepAndPrune = null;
+        _contactSet = new ContactSet();
+        for (Actor actor : actors)
+            _contactSet.actorChanged(actor);
+    }
+
+    /**
+     * Returns whether world caches actor query results within an act cycle.
+     */
+    public boolean isQueryCacheEnabled()  { return _queryCache != null; }
+
+    /**
+     * Sets whether world caches actor intersecting and range query results within an act cycle, so repeated
+     * queries (like isTouching() followed by getOneIntersectingObject()) don't search again until actors change.
+     */
+    public void setQueryCacheEnabled(boolean aValue)
+    {
+        if (aValue == isQueryCacheEnabled()) return;
+        _queryCache = aValue ? new QueryCache() : null;
+    }
+
+    /**
+     * Returns the query cache hit rate report (if query cache enabled).
+     */
+    public String getQueryCacheReport()
+    {
+        if (_queryCache != null)
+            return _queryCache.getReport();
+        return "Query cache not enabled";
+    }
+
+    /**
+     * Clears cached query results (if query cache enabled). Called once per act cycle.
+     */
+    void startQueryCacheCycle()
+    {
+        if (_queryCache != null)
+            _queryCache.startCycle();
+    }
+
+    /**
+     * Returns whether actors of ParallelActor classes act at the same time.
+     */
+    public boolean isParallelActEnabled()  { return _parallelAct != null; }
+
+    /**
+     * Sets whether actors of ParallelActor classes act at the same time across the common fork-join pool. Each run of
+     * consecutive parallel actors (in act order) acts between the actors before and after it. Objects added or removed
+     * while they act are added or removed after the run, in act order, and Greenfoot.getRandomNumber() gives each
+     * parallel actor numbers from its own generator seeded from the env random, so results for a fixed seed
+     * (GreenfootEnv.setRandomSeed()) are the same as with any thread timing.
+     */
+    public void setParallelActEnabled(boolean aValue)
+    {
+        if (aValue == isParallelActEnabled()) return;
+        _parallelAct = aValue ? new ParallelAct(this) : null;
+    }
+
+    /**
+     * Returns the parallel act report (if parallel act enabled).
+     */
+    public String getParallelActReport()
+    {
+        if (_parallelAct != null)
+            return _parallelAct.getReport();
+        return "Parallel act not enabled";
+    }
+
+    /**
+     * Returns whether adds and removes made while world and actors act are deferred until the end of the act phase.
+     */
+    public boolean isDeferredChangesEnabled()  { return _commandBuffer != null; }
+
+    /**
+     * Sets whether adds and removes made while world and actors act are deferred until the end of the act phase, then
+     * applied in the order made. Until then removed actors stay in world (but don't act) and added actors aren't in
+     * world, so every actor in a frame sees the same world and indexes and paint order change once per frame.
+     */
+    public void setDeferredChangesEnabled(boolean aValue)
+    {
+        if (aValue == isDeferredChangesEnabled()) return;
+        if (!aValue && _commandBuffer.isBuffering())
+            _commandBuffer.apply(this);
+        _commandBuffer = aValue ? new CommandBuffer() : null;
+    }
+
+    /**
+     * Returns the deferred changes report (if deferred changes enabled).
+     */
+    public String getCommandBufferReport()
+    {
+        if (_commandBuffer != null)
+            return _commandBuffer.getReport();
+        return "Deferred changes not enabled";
+    }
+
+    /**
+     * Starts act phase (adds and removes are buffered, if deferred changes enabled). Called once per act cycle.
+     */
+    void startActPhase()
+    {
+        if (_commandBuffer != null)
+            _commandBuffer.start();
+    }
+
+    /**
+     * Ends act phase and applies buffered adds and removes (if deferred changes enabled). Called once per act cycle.
+     */
+    void endActPhase()
+    {
+        if (_commandBuffer != null && _commandBuffer.isBuffering())
+            _commandBuffer.apply(this);
+    }
+
+    /**
+     * Returns whether parallel actors are acting (world changes are buffered and queries aren't allowed).
+     */
+    boolean isParallelActing()  { return _parallelAct != null && _parallelAct.isActing(); }
+
+    /**
+     * Calls act() for the actors in act order (parallel actors at the same time, if enabled). Called once per act cycle.
+     */
+    void actActors()
+    {
+        // If act order set, act actors in act order buckets
+        if (_actOrder != null) {
+            actActors(_actOrder.getActors());
+            return;
+        }
+
+        // If parallel act not enabled, just act actors in world order (skipping actors removed or with buffered remove)
+        View[] views = _worldView.getChildrenArray();
+        if (_parallelAct == null) {
+            for (View view : views) {
+                Actor actor = ((ActorView) view)._actor;
+                if (actor._world == this && !actor._removePending)
+                    actor.act();
+            }
+            return;
+        }
+
+        // Get actors and act
+        Actor[] actors = new Actor[views.length];
+        for (int i = 0; i < views.length; i++)
+            actors[i] = ((ActorView) views[i])._actor;
+        _parallelAct.actActors(actors);
+    }
+
+    /**
+     * Calls act() for given actors in order (parallel actors at the same time, if enabled).
+     */
+    private void actActors(Actor[] theActors)
+    {
+        if (_parallelAct != null) {
+            _parallelAct.actActors(theActors);
+            return;
+        }
+        for (Actor actor : theActors) {
+            if (actor._world == this && !actor._removePending)
+                actor.act();
+        }
+    }
+
+    /**
+     * Returns all pairs of touching actors.
+     */
+    public List<ActorPair> getTouchingPairs()  { return getTouchingPairs(null, null); }
+
+    /**
+     * Returns the pairs of touching actors that have an actor of each given class (or any class, if null).
+     * Pairs are from the start of the current act cycle, or found now if touching pairs aren't enabled.
+     */
+    public List<ActorPair> getTouchingPairs(Class<?> aClass1, Class<?> aClass2)
+    {
+        // If touching pairs not enabled, find them now (with sweep and prune sort order from last call)
+        List<ActorPair> touchingPairs;
+        if (_contactSet != null)
+            touchingPairs = _contactSet.getContacts();
+        else {
+            touchingPairs = new ArrayList<>();
+            if (_sweepAndPrune == null)
+                _sweepAndPrune = new SweepAndPrune();
+            _sweepAndPrune.findTouchingPairs(getObjects(Actor.class), touchingPairs);
+        }
+
+        // Get pairs for classes (skipping actors removed since pairs were found)
+        List<ActorPair> pairs = new ArrayList<>();
+        for (ActorPair pair : touchingPairs) {
+            if (pair.getActor1()._world == this && pair.getActor2()._world == this && pair.isPairForClasses(aClass1, aClass2))
+                pairs.add(pair);
+        }
+
+        // Return
+        return pairs;
+    }
+
+    /**
+     * Returns the pairs of actors that began touching at the start of the current act cycle (if touching pairs enabled).
+     */
+    public List<ActorPair> getBeginContacts()
+    {
+        return _contactSet != null ? new ArrayList<>(_contactSet.getBeginContacts()) : new ArrayList<>();
+    }
+
+    /**
+     * Returns the pairs of actors that were touching before the current act cycle and still were at its start
+     * (if touching pairs enabled).
+     */
+    public List<ActorPair> getStayContacts()
+    {
+        List<ActorPair> pairs = new ArrayList<>();
+        if (_contactSet != null)
+            _contactSet.getStayContacts(pairs);
+        return pairs;
+    }
+
+    /**
+     * Returns the pairs of actors that ended touching at the start of the current act cycle, or because an actor was
+     * removed in the last act cycle (if touching pairs enabled).
+     */
+    public List<ActorPair> getEndContacts()
+    {
+        return _contactSet != null ? new ArrayList<>(_contactSet.getEndContacts()) : new ArrayList<>();
+    }
+
+    /**
+     * Updates touching actor pairs and calls actor contact handlers (if touching pairs enabled). Called once per act cycle.
+     */
+    void updateTouchingPairs()
+    {
+        if (_contactSet == null) return;
+
+        // Update touching pairs for actors changed since last update
+        _contactSet.update(this, _spatialIndex);
+
+        // Call contact handlers for actors in pairs (skipping actors removed by handlers)
+        for (ActorPair pair : _contactSet.getContacts()) {
+            Actor actor1 = pair.getActor1();
+            Actor actor2 = pair.getActor2();
+            Consumer<Actor> contactHandler1 = actor1.getContactHandler();
+            if (contactHandler1 != null && actor1._world == this && actor2._world == this)
+                contactHandler1.accept(actor2);
+            Consumer<Actor> contactHandler2 = actor2.getContactHandler();
+            if (contactHandler2 != null && actor1._world == this && actor2._world == this)
+                contactHandler2.accept(actor1);
+        }
+    }
+
     /**
      * Act method for world.
      */
@@ -95,21 +499,36 @@ public class World {
     /**
      * Returns the number of objects currently in world.
      */
-    public int numberOfObjects()
-    {
-        int c = 0;
-        for (View n : _worldView.getChildren())
-            if (getActorForView(n) != null) c++;
-        return c;
-    }
+    public int numberOfObjects()  { return _actorRegistry.getActorCount(); }
 
     /**
      * Adds an object.
      */
     public void addObject(Actor anActor, int anX, int aY)
     {
+        // If parallel actors acting, add after they finish (or at end of act phase, if deferred changes enabled)
+        if (_parallelAct != null && _parallelAct.deferAddObject(anActor, anX, aY))
+            return;
+        if (_commandBuffer != null && _commandBuffer.addObject(anActor, anX, aY))
+            return;
+
+        // If already in this world, just move it
+        if (anActor._world == this) {
+            anActor.setLocation(anX, aY);
+            return;
+        }
+
+        // If in another world, remove from it first (so its indexes don't keep actor)
+        if (anActor._world != null)
+            anActor._world.removeObject(anActor);
+
         _worldView.addChild(anActor._actorView);
         anActor._world = this;
+        anActor._worldOrder = _nextActorOrder++;
+        _actorRegistry.addActor(anActor);
+        _tagIndex.addActor(anActor);
+        if (_actOrder != null)
+            _actOrder.addActor(anActor);
         anActor.setLocation(anX, aY);
         anActor.addedToWorld(this);
     }
@@ -119,7 +538,30 @@ public class World {
      */
     public void removeObject(Actor anActor)
     {
+        if (anActor._world != this && anActor._world != null) return;
+
+        // If parallel actors acting, remove after they finish (or at end of act phase, if deferred changes enabled)
+        // (actor may not be in world yet if its add was buffered)
+        if (_parallelAct != null && _parallelAct.deferRemoveObject(anActor))
+            return;
+        if (_commandBuffer != null && _commandBuffer.removeObject(anActor))
+            return;
+        if (anActor._world != this) return;
+
         _worldView.removeChild(anActor._actorView);
+        _spatialIndex.removeActor(anActor);
+        if (_cellIndex != null)
+            _cellIndex.removeActor(anActor);
+        _actorRegistry.removeActor(anActor);
+        _tagIndex.removeActor(anActor);
+        if (_actOrder != null)
+            _actOrder.removeActor(anActor);
+        if (_queryCache != null)
+            _queryCache.actorChanged(anActor);
+        if (_contactSet != null)
+            _contactSet.actorRemoved(anActor);
+        anActor._queryCacheEntry = null;
+        anActor._world = null;
     }
 
     /**
@@ -127,23 +569,131 @@ public class World {
      */
     public <T> List<T> getObjects(Class<T> aClass)
     {
-        List<T> list = new ArrayList<>();
-        for (View child : _worldView.getChildren()) {
-            Actor actor = getActorForView(child);
-            if (actor == null)
-                continue;
-            if (aClass == null || aClass.isInstance(actor))
-                list.add((T) actor);
+        return getObjects(aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the actors of a given class in given list (cleared first).
+     */
+    public <T> List<T> getObjects(Class<T> aClass, List<T> aList)
+    {
+        Class<?> actorClass = aClass != null ? aClass : Actor.class;
+        aList.clear();
+        _actorRegistry.getActors(actorClass, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Calls given consumer for each actor of given class.
+     */
+    public <T> void forEachObject(Class<T> aClass, Consumer<? super T> aConsumer)
+    {
+        List<Actor> actors = borrowActorList();
+        try {
+            _actorRegistry.getActors(aClass != null ? aClass : Actor.class, actors);
+            for (int i = 0, iMax = actors.size(); i < iMax; i++)
+                aConsumer.accept((T) actors.get(i));
         }
-        return list;
+        finally { returnActorList(actors); }
     }
 
     /**
-     * Returns the objects at given point.
+     * Returns the objects with image covering the center of given cell location.
      */
     public <T> List<T> getObjectsAt(int aX, int aY, Class<T> aClass)
     {
-        return getActorsAt(null, aX, aY, aClass);
+        return getObjectsAt(aX, aY, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the objects with image covering the center of given cell location in given list (cleared first).
+     */
+    public <T> List<T> getObjectsAt(int aX, int aY, Class<T> aClass, List<T> aList)
+    {
+        return getActorsInCell(null, aX, aY, aClass, aList);
+    }
+
+    /**
+     * Returns the first object of given class hit by a line between given world locations.
+     */
+    public <T> T raycast(int aX0, int aY0, int aX1, int aY1, Class<T> aClass)
+    {
+        return getActorHitBySegment(null, aX0, aY0, aX1, aY1, aClass);
+    }
+
+    /**
+     * Returns the objects of given class hit by a line between given world locations, nearest first.
+     */
+    public <T> List<T> raycastAll(int aX0, int aY0, int aX1, int aY1, Class<T> aClass)
+    {
+        return raycastAll(aX0, aY0, aX1, aY1, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the objects of given class hit by a line between given world locations, nearest first, in given list
+     * (cleared first).
+     */
+    public <T> List<T> raycastAll(int aX0, int aY0, int aX1, int aY1, Class<T> aClass, List<T> aList)
+    {
+        return getActorsHitBySegment(null, aX0, aY0, aX1, aY1, aClass, aList);
+    }
+
+    /**
+     * Returns the nearest object of given class to given world location.
+     */
+    public <T> T getNearestObject(int aX, int aY, Class<T> aClass)
+    {
+        return getNearestObject(aX, aY, Integer.MAX_VALUE, aClass);
+    }
+
+    /**
+     * Returns the nearest object of given class within given distance of given world location.
+     */
+    public <T> T getNearestObject(int aX, int aY, int aMaxDist, Class<T> aClass)
+    {
+        return getNearestActor(null, aX, aY, aMaxDist, aClass);
+    }
+
+    /**
+     * Returns up to given count of the nearest objects of given class within given distance of given world location,
+     * nearest first.
+     */
+    public <T> List<T> getNearestObjects(int aX, int aY, int aCount, int aMaxDist, Class<T> aClass)
+    {
+        return getNearestActors(null, aX, aY, aCount, aMaxDist, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the objects of given class (optional) intersecting each of given actors, as a list for each actor in the
+     * order given (each in world order, empty for actors not in world). Runs over a snapshot of the world actors, and
+     * large batches are split across the common fork-join pool, so actors must not change until it returns.
+     */
+    public <T> List<List<T>> getIntersectingObjects(Collection<? extends Actor> theActors, Class<T> aClass)
+    {
+        checkNotParallelActing();
+        WorldSnapshot snapshot = new WorldSnapshot(this, getObjects(Actor.class), Math.max(_cellSize, SPATIAL_HASH_GRID_SIZE));
+        Actor[] actors = theActors.toArray(new Actor[0]);
+        List<Actor>[] hitLists = new List[actors.length];
+        snapshot.findIntersectingActors(actors, aClass != null ? ActorType.get(aClass) : null, hitLists);
+        return (List<List<T>>) (List<?>) Arrays.asList(hitLists);
+    }
+
+    /**
+     * Returns the objects with given tag (in world order).
+     */
+    public List<Actor> getObjectsWithTag(String aTag)
+    {
+        return getObjectsWithTag(aTag, Actor.class);
+    }
+
+    /**
+     * Returns the objects with given tag that are instances of given class (in world order).
+     */
+    public <T> List<T> getObjectsWithTag(String aTag, Class<T> aClass)
+    {
+        List<Actor> actors = new ArrayList<>();
+        _tagIndex.getActors(aTag, aClass, actors);
+        return (List<T>) actors;
     }
 
     /**
@@ -151,7 +701,64 @@ public class World {
      */
     public void removeObjects(Collection<? extends Actor> theActors)
     {
-        theActors.forEach(this::removeObject);
+        // If parallel actors acting or act phase changes deferred, remove each (buffered)
+        if (isParallelActing() || _commandBuffer != null && _commandBuffer.isBuffering()) {
+            theActors.forEach(this::removeObject);
+            return;
+        }
+
+        // Remove in one batch
+        removeActors(theActors);
+    }
+
+    /**
+     * Removes given actors in one batch: the world child list, registry, tag index and act order are each compacted
+     * in one pass, instead of once per actor.
+     */
+    void removeActors(Collection<? extends Actor> theActors)
+    {
+        // Get actors in world (marking them, so duplicates are skipped)
+        List<Actor> actors = new ArrayList<>(theActors.size());
+        for (Actor actor : theActors) {
+            if (actor._world == this && !actor._batchRemove) {
+                actor._batchRemove = true;
+                actors.add(actor);
+            }
+        }
+
+        // If one or none, just remove normally
+        if (actors.size() <= 1) {
+            for (Actor actor : actors) {
+                actor._batchRemove = false;
+                removeObject(actor);
+            }
+            return;
+        }
+
+        // Remove actors from indexes and caches
+        for (Actor actor : actors) {
+            _spatialIndex.removeActor(actor);
+            if (_cellIndex != null)
+                _cellIndex.removeActor(actor);
+            if (_queryCache != null)
+                _queryCache.actorChanged(actor);
+            if (_contactSet != null)
+                _contactSet.actorRemoved(actor);
+        }
+
+        // Compact child list, registry, tag index and act order
+        _worldView.removeBatchRemoveChildren();
+        _actorRegistry.removeActors(actors);
+        _tagIndex.removeActors(actors);
+        if (_actOrder != null)
+            _actOrder.removeActors(actors);
+
+        // Clear actor marks and world
+        for (Actor actor : actors) {
+            actor._batchRemove = false;
+            actor._queryCacheEntry = null;
+            actor._world = null;
+        }
     }
 
     /**
@@ -200,11 +807,15 @@ public class World {
     }
 
     /**
-     * Sets the act order.
+     * Sets the act order: actors of the first class act first, then actors of the second class, and so on, then
+     * actors of other classes (each in the order added). Actors act with the most specific class they are an instance
+     * of. Actor buckets for the classes are kept as actors are added and removed, so act cycles don't sort actors.
      */
     public void setActOrder(Class<?>... theClasses)
     {
-        System.err.println("World.setActOrder: Not Impl");
+        if (theClasses == null || theClasses.length == 0)
+            _actOrder = null;
+        else _actOrder = new ActOrder(theClasses.clone(), _worldView.getChildrenArray());
     }
 
     /**
@@ -241,110 +852,767 @@ public class World {
      */
     protected <T> T getActorAt(Actor anActor, double aX, double aY, Class<T> aClass)
     {
-        ViewList actorViews = _worldView.getChildren();
+        List<Actor> hitList = borrowActorList();
+        try {
+            findActorsAt(anActor, aX, aY, aClass, true, hitList);
+            return hitList.isEmpty() ? null : (T) hitList.get(0);
+        }
+        finally { returnActorList(hitList); }
+    }
+
+    /**
+     * Returns the objects at given point.
+     */
+    protected <T> List<T> getActorsAt(Actor anActor, double aX, double aY, Class<T> aClass)
+    {
+        return getActorsAt(anActor, aX, aY, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns the objects at given point in given list (cleared first).
+     */
+    protected <T> List<T> getActorsAt(Actor anActor, double aX, double aY, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        findActorsAt(anActor, aX, aY, aClass, false, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Returns the first actor intersecting given Actor and matching given class (optional).
+     */
+    protected Actor getIntersectingActorForActorAndClass(Actor anActor, Class<?> aClass)
+    {
+        // If query cache enabled, return first cached hit
+        if (_queryCache != null) {
+            List<Actor> hits = getCachedIntersectingActors(anActor, aClass);
+            return hits.isEmpty() ? null : hits.get(0);
+        }
 
-        for (View actorView : actorViews) {
-            Actor actor = getActorForView(actorView);
-            if (actor == null || actor == anActor)
+        // Find first hit
+        List<Actor> hitList = borrowActorList();
+        try {
+            findIntersectingActors(anActor, null, aClass, null, true, hitList);
+            return hitList.isEmpty() ? null : hitList.get(0);
+        }
+        finally { returnActorList(hitList); }
+    }
+
+    /**
+     * Returns all actors intersecting given Actor and matching given class (optional).
+     */
+    protected <T> List<T> getIntersectingActorsForActorShapeAndClass(Actor anActor, Shape aShape, Class<T> aClass)
+    {
+        return getIntersectingActorsForActorShapeAndClass(anActor, aShape, aClass, new ArrayList<>());
+    }
+
+    /**
+     * Returns all actors intersecting given Actor (or shape) and matching given class (optional) in given list (cleared first).
+     */
+    protected <T> List<T> getIntersectingActorsForActorShapeAndClass(Actor anActor, Shape aShape, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        if (_queryCache != null && aShape == null)
+            ((List<Actor>) aList).addAll(getCachedIntersectingActors(anActor, aClass));
+        else findIntersectingActors(anActor, aShape, aClass, null, false, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Calls given consumer for all actors intersecting given Actor (or shape) and matching given class (optional).
+     */
+    protected <T> void forEachIntersectingActorForActorShapeAndClass(Actor anActor, Shape aShape, Class<T> aClass, Consumer<? super T> aConsumer)
+    {
+        List<Actor> hitList = borrowActorList();
+        try {
+            if (_queryCache != null && aShape == null)
+                hitList.addAll(getCachedIntersectingActors(anActor, aClass));
+            else findIntersectingActors(anActor, aShape, aClass, null, false, hitList);
+            for (int i = 0, iMax = hitList.size(); i < iMax; i++)
+                aConsumer.accept((T) hitList.get(i));
+        }
+        finally { returnActorList(hitList); }
+    }
+
+    /**
+     * Adds actors (other than given actor) that contain given point and match given class to given list, in world order.
+     */
+    private void findActorsAt(Actor anActor, double aX, double aY, Class<?> aClass, boolean firstOnly, List<Actor> theHits)
+    {
+        // Get candidate actors at point from spatial index
+        int layerMask = anActor != null ? anActor.getLayerMask() : Actor.ALL_LAYERS;
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> candidates = borrowActorList();
+        _spatialIndex.getActorsAtPoint(aX, aY, layerMask, candidates);
+        double[] boundsRect = _boundsRect;
+        Actor firstHit = null;
+
+        // Iterate over candidates and add actors that contain point and are instance of class
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+
+            // If actor not in layer mask, or is given actor, or after first hit (if only first), or not class, skip
+            Actor actor = candidates.get(i);
+            if ((actor.getLayers() & layerMask) == 0)
+                continue;
+            if (actor == anActor || firstHit != null && actor._worldOrder > firstHit._worldOrder)
+                continue;
+            if (classType != null && !actor._actorType.isInstanceOf(classType))
                 continue;
-            if (aClass == null || aClass.isInstance(actor)) {
-                Point point = actorView.parentToLocal(aX, aY);
-                if (actorView.contains(point.getX(), point.getY()))
-                    return (T) actor;
+
+            // If point outside actor bounds rect, skip
+            actor.getBoundsRectInWorld(boundsRect);
+            if (aX < boundsRect[0] || aX > boundsRect[2] || aY < boundsRect[1] || aY > boundsRect[3])
+                continue;
+
+            // If actor view contains point (and collider and opaque pixel, if round or precise), add hit
+            View actorView = actor._actorView;
+            Point point = actorView.parentToLocal(aX, aY);
+            if (actorView.contains(point.getX(), point.getY()) && actor.isColliderContaining(aX, aY) && actor.isMaskContaining(aX, aY)) {
+                if (firstOnly)
+                    firstHit = actor;
+                else theHits.add(actor);
             }
         }
 
-        return null;
+        // Return candidates list and add first hit or sort hits in world order
+        returnActorList(candidates);
+        if (firstHit != null)
+            theHits.add(firstHit);
+        else theHits.sort(Actor.WORLD_ORDER_COMPARATOR);
     }
 
     /**
-     * Returns the objects at given point.
+     * Adds actors (other than given actor) intersecting given shape (or actor bounds, if null) and matching given class
+     * and tag (optional) to given list, in world order. Candidate bounds rects are checked first, so no shapes are
+     * created for far actors.
      */
-    protected <T> List<T> getActorsAt(Actor anActor, double aX, double aY, Class<T> aClass)
+    private void findIntersectingActors(Actor anActor, Shape aShape, Class<?> aClass, String aTag, boolean firstOnly, List<Actor> theHits)
     {
-        ViewList worldViews = _worldView.getChildren();
-        List<T> hitList = new ArrayList<>();
+        // Get query bounds rect from shape or actor
+        double[] boundsRect = _boundsRect;
+        if (aShape != null) {
+            Rect shapeBounds = aShape.getBounds();
+            boundsRect[0] = shapeBounds.x;
+            boundsRect[1] = shapeBounds.y;
+            boundsRect[2] = shapeBounds.getMaxX();
+            boundsRect[3] = shapeBounds.getMaxY();
+        }
+        else anActor.getBoundsRectInWorld(boundsRect);
+        double queryMinX = boundsRect[0], queryMinY = boundsRect[1];
+        double queryMaxX = boundsRect[2], queryMaxY = boundsRect[3];
 
-        for (View child : worldViews) {
+        // Get candidate actors from spatial index
+        int layerMask = anActor != null ? anActor.getLayerMask() : Actor.ALL_LAYERS;
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        int tagId = aTag != null ? TagIndex.findTagId(aTag) : -1;
+
+        // If tag never given to an actor, just return
+        if (aTag != null && tagId < 0)
+            return;
+        List<Actor> candidates = borrowActorList();
+        _spatialIndex.getActorsInRect(queryMinX, queryMinY, queryMaxX, queryMaxY, layerMask, candidates);
+        Actor firstHit = null;
+
+        // Iterate over candidates and add actors that are intersecting and instance of given class (and have tag)
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+
+            // If actor not in layer mask, or is given actor, or after first hit (if only first), or not class or tag, skip
+            Actor otherActor = candidates.get(i);
+            if ((otherActor.getLayers() & layerMask) == 0)
+                continue;
+            if (otherActor == anActor || firstHit != null && otherActor._worldOrder > firstHit._worldOrder)
+                continue;
+            if (classType != null && !otherActor._actorType.isInstanceOf(classType) || tagId >= 0 && !otherActor.hasTagId(tagId))
+                continue;
 
-            Actor actor = getActorForView(child);
-            if (actor == null || actor == anActor)
+            // If bounds rects don't intersect, skip
+            otherActor.getBoundsRectInWorld(boundsRect);
+            if (boundsRect[0] > queryMaxX || boundsRect[2] < queryMinX || boundsRect[1] > queryMaxY || boundsRect[3] < queryMinY)
                 continue;
 
-            if (aClass == null || aClass.isInstance(actor)) {
-                Point point = child.parentToLocal(aX, aY);
-                if (child.contains(point.getX(), point.getY()))
-                    hitList.add((T) actor);
+            // If actor bounds in world coords intersects shape (or actor bounds and masks, if actor query), add hit
+            boolean isHit = aShape != null ? otherActor.getBoundsInWorld().intersectsShape(aShape) :
+                anActor.isBoundsIntersecting(otherActor) && anActor.isMaskIntersecting(otherActor);
+            if (isHit) {
+                if (firstOnly)
+                    firstHit = otherActor;
+                else theHits.add(otherActor);
             }
         }
 
-        return hitList;
+        // Return candidates list and add first hit or sort hits in world order
+        returnActorList(candidates);
+        if (firstHit != null)
+            theHits.add(firstHit);
+        else theHits.sort(Actor.WORLD_ORDER_COMPARATOR);
     }
 
     /**
-     * Returns the first actor intersecting given Actor and matching given class (optional).
+     * Returns the first actor of given class (other than given actor) with image covering the center of given cell
+     * location. Actors with images spanning several cells are found from any of them, not just their location cell.
      */
-    protected Actor getIntersectingActorForActorAndClass(Actor anActor, Class<?> aClass)
+    protected Actor getActorInCell(Actor anActor, int aX, int aY, Class<?> aClass)
     {
-        // Get actor bounds in world coords and all actor views
-        Shape actorBoundsInWorld = anActor.getBoundsInWorld();
-        ViewList actorViews = _worldView.getChildren();
+        return (Actor) getActorAt(anActor, aX * _cellSize + _cellSize / 2, aY * _cellSize + _cellSize / 2, aClass);
+    }
 
-        // Iterate over all actor views and if any is intersecting and instance of given class, return actor
-        for (View otherView : actorViews) {
-            if (isIntersectingActorViewForActorShapeAndClass(otherView, anActor, actorBoundsInWorld, aClass))
-                return getActorForView(otherView);
+    /**
+     * Returns the actors of given class (other than given actor) with image covering the center of given cell location
+     * in given list (cleared first).
+     */
+    protected <T> List<T> getActorsInCell(Actor anActor, int aX, int aY, Class<T> aClass, List<T> aList)
+    {
+        return getActorsAt(anActor, aX * _cellSize + _cellSize / 2, aY * _cellSize + _cellSize / 2, aClass, aList);
+    }
+
+    /**
+     * Returns the actors of given class within given distance of given actor location (not including actors
+     * at the same location). If diagonal, distance is measured in both directions (a square), otherwise it is the
+     * sum of horizontal and vertical distance (a diamond).
+     */
+    protected <T> List<T> getNeighborsForActor(Actor anActor, int aDist, boolean doDiagonal, Class<T> aClass)
+    {
+        // Get actors in square around actor
+        int actorX = anActor.getX(), actorY = anActor.getY();
+        List<Actor> actors = new ArrayList<>();
+        findActorsInCells(anActor, actorX - aDist, actorY - aDist, actorX + aDist, actorY + aDist, aClass, actors);
+
+        // Remove actors at same location or (if not diagonal) outside diamond
+        for (int i = actors.size() - 1; i >= 0; i--) {
+            Actor actor = actors.get(i);
+            int dx = Math.abs(actor.getX() - actorX), dy = Math.abs(actor.getY() - actorY);
+            if (dx == 0 && dy == 0 || !doDiagonal && dx + dy > aDist)
+                actors.remove(i);
         }
 
-        // Return not found
-        return null;
+        // Return
+        return (List<T>) actors;
     }
 
     /**
-     * Returns all actors intersecting given Actor and matching given class (optional).
+     * Returns the actors of given class with center within given radius of given actor center (in cells) in given
+     * list (cleared first).
      */
-    protected <T> List<T> getIntersectingActorsForActorShapeAndClass(Actor anActor, Shape aShape, Class<T> aClass)
+    protected <T> List<T> getActorsInRange(Actor anActor, int aRadius, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        if (_queryCache != null)
+            ((List<Actor>) aList).addAll(getCachedActorsInRange(anActor, aRadius, aClass));
+        else findActorsInRange(anActor, aRadius, aClass, null, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Returns the actors with given tag and class (optional) intersecting given actor in given list (cleared first).
+     */
+    protected <T> List<T> getIntersectingActorsWithTag(Actor anActor, String aTag, Class<T> aClass, List<T> aList)
     {
-        // Get actor view, actor bounds in world coords and all actor views
-        Shape actorBoundsInWorld = aShape != null ? aShape : anActor.getBoundsInWorld();
-        ViewList actorViews = _worldView.getChildren();
-        List<T> intersectingActors = new ArrayList<>();
+        aList.clear();
+        findIntersectingActors(anActor, null, aClass, aTag, false, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Returns the actors with given tag and class (optional) with center within given radius of given actor center
+     * (in cells) in given list (cleared first).
+     */
+    protected <T> List<T> getActorsInRangeWithTag(Actor anActor, int aRadius, String aTag, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        findActorsInRange(anActor, aRadius, aClass, aTag, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Returns the cached actors of given class intersecting given actor (finding and caching them, if needed).
+     */
+    private List<Actor> getCachedIntersectingActors(Actor anActor, Class<?> aClass)
+    {
+        // If cached, just return (cache isn't thread-safe, so check for parallel act first)
+        checkNotParallelActing();
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> hits = _queryCache.getResult(anActor, QueryCache.INTERSECTING, 0, classType);
+        if (hits != null)
+            return hits;
+
+        // Find hits and cache with actor bounds rect as query rect
+        List<Actor> hitList = borrowActorList();
+        findIntersectingActors(anActor, null, aClass, null, false, hitList);
+        anActor.getBoundsRectInWorld(_boundsRect);
+        hits = _queryCache.putResult(anActor, QueryCache.INTERSECTING, 0, classType, _boundsRect, hitList);
+        returnActorList(hitList);
+        return hits;
+    }
+
+    /**
+     * Returns the cached actors of given class within given radius of given actor (finding and caching them, if needed).
+     */
+    private List<Actor> getCachedActorsInRange(Actor anActor, int aRadius, Class<?> aClass)
+    {
+        // If cached, just return (cache isn't thread-safe, so check for parallel act first)
+        checkNotParallelActing();
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> hits = _queryCache.getResult(anActor, QueryCache.IN_RANGE, aRadius, classType);
+        if (hits != null)
+            return hits;
 
-        // Iterate over all actor views and if any is intersecting and instance of given class, add actor to list
-        for (View otherView : actorViews) {
-            if (isIntersectingActorViewForActorShapeAndClass(otherView, anActor, actorBoundsInWorld, aClass))
-                intersectingActors.add((T) getActorForView(otherView));
+        // Find hits and cache with pixel rect of cell range as query rect (actor bounds contain actor location)
+        List<Actor> hitList = borrowActorList();
+        findActorsInRange(anActor, aRadius, aClass, null, hitList);
+        double[] queryRect = _boundsRect;
+        queryRect[0] = ((double) anActor.getX() - aRadius) * _cellSize;
+        queryRect[1] = ((double) anActor.getY() - aRadius) * _cellSize;
+        queryRect[2] = ((double) anActor.getX() + aRadius + 1) * _cellSize;
+        queryRect[3] = ((double) anActor.getY() + aRadius + 1) * _cellSize;
+        hits = _queryCache.putResult(anActor, QueryCache.IN_RANGE, aRadius, classType, queryRect, hitList);
+        returnActorList(hitList);
+        return hits;
+    }
+
+    /**
+     * Adds the actors of given class with location in given cell range (inclusive) to given list, in world order.
+     */
+    private void findActorsInCells(Actor anActor, int aMinX, int aMinY, int aMaxX, int aMaxY, Class<?> aClass, List<Actor> theHits)
+    {
+        // Get candidate actors for cell range
+        int layerMask = anActor != null ? anActor.getLayerMask() : Actor.ALL_LAYERS;
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> candidates = borrowActorList();
+        getActorsNearCells(aMinX, aMinY, aMaxX, aMaxY, layerMask, candidates);
+
+        // Add candidates (in layer mask and other than given actor) that are instance of class with location in range
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+            Actor actor = candidates.get(i);
+            if ((actor.getLayers() & layerMask) == 0 || actor == anActor || classType != null && !actor._actorType.isInstanceOf(classType))
+                continue;
+            int actorX = actor.getX(), actorY = actor.getY();
+            if (actorX >= aMinX && actorX <= aMaxX && actorY >= aMinY && actorY <= aMaxY)
+                theHits.add(actor);
         }
 
-        // Return
-        return intersectingActors;
+        // Return candidates list and sort hits in world order
+        returnActorList(candidates);
+        theHits.sort(Actor.WORLD_ORDER_COMPARATOR);
     }
 
     /**
-     * Returns whether given actor view intersects given shape and is instance of given class (optional).
+     * Adds the actors of given class and tag (optional) with location within given radius of given actor location to
+     * given list, in world order.
      */
-    private boolean isIntersectingActorViewForActorShapeAndClass(View actorView, Actor anActor, Shape aShape, Class<?> aClass)
+    private void findActorsInRange(Actor anActor, int aRadius, Class<?> aClass, String aTag, List<Actor> theHits)
     {
-        // If no actor or is given actor, return false
-        Actor actor = getActorForView(actorView);
-        if (actor == null || actor == anActor)
-            return false;
+        // Get candidate actors for cell range around actor (or actors with tag, if few)
+        int actorX = anActor.getX(), actorY = anActor.getY();
+        int layerMask = anActor.getLayerMask();
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        int tagId = aTag != null ? TagIndex.findTagId(aTag) : -1;
 
-        // If class is specified and actor isn't class, return false
-        if (aClass != null && !aClass.isInstance(actor))
-            return false;
+        // If tag never given to an actor, just return
+        if (aTag != null && tagId < 0)
+            return;
+        List<Actor> candidates = borrowActorList();
+        if (aTag != null && _tagIndex.getActorCount(aTag) <= TAG_SCAN_COUNT)
+            _tagIndex.getActors(aTag, null, candidates);
+        else getActorsNearCells(actorX - aRadius, actorY - aRadius, actorX + aRadius, actorY + aRadius, layerMask, candidates);
 
-        // Return whether actor bounds in world coords intersects shape
-        Shape actorBoundsInWorld = actor.getBoundsInWorld();
-        return actorBoundsInWorld.intersectsShape(aShape);
+        // Add candidates (in layer mask and other than given actor) that are instance of class and have tag with location in circle
+        long radiusSquared = (long) aRadius * aRadius;
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+            Actor actor = candidates.get(i);
+            if ((actor.getLayers() & layerMask) == 0 || actor == anActor || classType != null && !actor._actorType.isInstanceOf(classType))
+                continue;
+            if (tagId >= 0 && !actor.hasTagId(tagId))
+                continue;
+            long dx = actor.getX() - actorX, dy = actor.getY() - actorY;
+            if (dx * dx + dy * dy <= radiusSquared)
+                theHits.add(actor);
+        }
+
+        // Return candidates list and sort hits in world order
+        returnActorList(candidates);
+        theHits.sort(Actor.WORLD_ORDER_COMPARATOR);
+    }
+
+    /**
+     * Adds candidate actors that may have location in given cell range (inclusive) to given list. Uses cell index,
+     * or spatial index if there is no cell index (cells are pixels), since an actor bounds contain its location.
+     */
+    private void getActorsNearCells(int aMinX, int aMinY, int aMaxX, int aMaxY, int aLayerMask, List<Actor> theActors)
+    {
+        if (_cellIndex != null)
+            _cellIndex.getActorsInRect(aMinX, aMinY, aMaxX, aMaxY, theActors);
+        else _spatialIndex.getActorsInRect(aMinX, aMinY, aMaxX, aMaxY, aLayerMask, theActors);
+    }
+
+    /**
+     * Returns the first actor of given class (other than given actor) hit by a line between given world locations.
+     */
+    protected <T> T getActorHitBySegment(Actor anActor, int aX0, int aY0, int aX1, int aY1, Class<T> aClass)
+    {
+        List<Actor> hitList = borrowActorList();
+        try {
+            findActorsOnSegment(anActor, aX0, aY0, aX1, aY1, aClass, true, hitList);
+            return hitList.isEmpty() ? null : (T) hitList.get(0);
+        }
+        finally { returnActorList(hitList); }
+    }
+
+    /**
+     * Returns the actors of given class (other than given actor) hit by a line between given world locations, nearest
+     * first, in given list (cleared first).
+     */
+    protected <T> List<T> getActorsHitBySegment(Actor anActor, int aX0, int aY0, int aX1, int aY1, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        findActorsOnSegment(anActor, aX0, aY0, aX1, aY1, aClass, false, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Adds actors (other than given actor) hit by a line between the centers of given world locations and matching
+     * given class to given list, nearest first (or just the nearest, if first only).
+     */
+    private void findActorsOnSegment(Actor anActor, int aX0, int aY0, int aX1, int aY1, Class<?> aClass, boolean firstOnly, List<Actor> theHits)
+    {
+        // Get segment end points in world pixels (cell centers)
+        double x0 = aX0 * _cellSize + _cellSize / 2, y0 = aY0 * _cellSize + _cellSize / 2;
+        double x1 = aX1 * _cellSize + _cellSize / 2, y1 = aY1 * _cellSize + _cellSize / 2;
+
+        // Get candidate actors along segment from spatial index
+        int layerMask = anActor != null ? anActor.getLayerMask() : Actor.ALL_LAYERS;
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> candidates = borrowActorList();
+        _spatialIndex.getActorsOnSegment(x0, y0, x1, y1, layerMask, candidates);
+        Actor firstHit = null;
+
+        // Iterate over candidates and add actors that are hit by segment and instance of class
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+
+            // If actor not in layer mask, or is given actor, or not class, skip
+            Actor actor = candidates.get(i);
+            if ((actor.getLayers() & layerMask) == 0 || actor == anActor || classType != null && !actor._actorType.isInstanceOf(classType))
+                continue;
+
+            // If segment hits actor, add hit (or if first only, replace first hit if nearer)
+            double hitFraction = actor.getSegmentHitFraction(x0, y0, x1, y1);
+            if (hitFraction < 0)
+                continue;
+            actor._queryDistance = hitFraction;
+            if (!firstOnly)
+                theHits.add(actor);
+            else if (firstHit == null || DISTANCE_COMPARATOR.compare(actor, firstHit) < 0)
+                firstHit = actor;
+        }
+
+        // Return candidates list and add first hit or sort hits by distance
+        returnActorList(candidates);
+        if (firstHit != null)
+            theHits.add(firstHit);
+        else theHits.sort(DISTANCE_COMPARATOR);
+    }
+
+    /**
+     * Returns the nearest actor of given class (other than given actor) within given distance of given world location.
+     */
+    protected <T> T getNearestActor(Actor anActor, int aX, int aY, int aMaxDist, Class<T> aClass)
+    {
+        List<Actor> hitList = borrowActorList();
+        try {
+            findNearestActors(anActor, aX, aY, 1, aMaxDist, aClass, hitList);
+            return hitList.isEmpty() ? null : (T) hitList.get(0);
+        }
+        finally { returnActorList(hitList); }
+    }
+
+    /**
+     * Returns up to given count of the nearest actors of given class (other than given actor) within given distance of
+     * given world location, nearest first, in given list (cleared first).
+     */
+    protected <T> List<T> getNearestActors(Actor anActor, int aX, int aY, int aCount, int aMaxDist, Class<T> aClass, List<T> aList)
+    {
+        aList.clear();
+        findNearestActors(anActor, aX, aY, aCount, aMaxDist, aClass, (List<Actor>) aList);
+        return aList;
+    }
+
+    /**
+     * Adds up to given count of the nearest actors of given class (other than given actor) with location within given
+     * distance of given world location to given list, nearest first. Searches a square around the location that
+     * doubles in size until it holds enough actors (or holds all actor locations), so cost depends on the actors near
+     * the location.
+     */
+    private void findNearestActors(Actor anActor, int aX, int aY, int aCount, int aMaxDist, Class<?> aClass, List<Actor> theHits)
+    {
+        // Get number of actors that can be found - just return if none
+        Class<?> actorClass = aClass != null ? aClass : Actor.class;
+        int classCount = _actorRegistry.getActorCount(actorClass);
+        if (anActor != null && anActor._world == this && actorClass.isInstance(anActor))
+            classCount--;
+        int targetCount = Math.min(aCount, classCount);
+        int maxDist = Math.min(aMaxDist, MAX_SEARCH_RADIUS);
+        if (targetCount <= 0 || maxDist < 0)
+            return;
+
+        // Get radius of circle around location that holds world (and all actor locations, if bounded)
+        long worldCoverRadius = getCoverRadius(aX, aY, 0, 0, _width - 1, _height - 1);
+        long coverRadius = _bounded ? worldCoverRadius : Long.MAX_VALUE;
+        boolean coverRadiusKnown = _bounded;
+
+        // Search squares of increasing radius until enough actors are in circle or radius is max distance
+        // (or circle holds all actor locations, since layer mask can filter out actors counted for class)
+        int layerMask = anActor != null ? anActor.getLayerMask() : Actor.ALL_LAYERS;
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> candidates = borrowActorList();
+        int radius = Math.min(Math.max(SPATIAL_HASH_GRID_SIZE / _cellSize, 2), maxDist);
+        while (true) {
+
+            // Get candidate actors for cell range around location
+            candidates.clear();
+            theHits.clear();
+            getActorsNearCells((int) Math.max((long) aX - radius, Integer.MIN_VALUE), (int) Math.max((long) aY - radius, Integer.MIN_VALUE),
+                (int) Math.min((long) aX + radius, Integer.MAX_VALUE), (int) Math.min((long) aY + radius, Integer.MAX_VALUE),
+                layerMask, candidates);
+
+            // Add candidates (in layer mask and other than given actor) that are instance of class with location in circle
+            long radiusSquared = (long) radius * radius;
+            for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+                Actor actor = candidates.get(i);
+                if ((actor.getLayers() & layerMask) == 0 || actor == anActor || classType != null && !actor._actorType.isInstanceOf(classType))
+                    continue;
+                long dx = actor.getX() - aX, dy = actor.getY() - aY;
+                long distSquared = dx * dx + dy * dy;
+                if (distSquared <= radiusSquared) {
+                    actor._queryDistance = distSquared;
+                    theHits.add(actor);
+                }
+            }
+
+            // If enough actors found or at max distance or circle holds all actor locations, stop
+            if (theHits.size() >= targetCount || radius >= maxDist || radius >= coverRadius)
+                break;
+
+            // Double radius (up to max distance and radius of circle that holds all actor locations)
+            long nextRadius = Math.min((long) radius * 2, maxDist);
+            if (!coverRadiusKnown && nextRadius >= worldCoverRadius) {
+                coverRadius = getActorsCoverRadius(aX, aY, actorClass);
+                coverRadiusKnown = true;
+            }
+            radius = (int) Math.min(nextRadius, coverRadius);
+        }
+
+        // Return candidates list, sort hits by distance and trim to count
+        returnActorList(candidates);
+        theHits.sort(DISTANCE_COMPARATOR);
+        while (theHits.size() > aCount)
+            theHits.remove(theHits.size() - 1);
+    }
+
+    /**
+     * Returns the radius of the circle around given world location that holds the world and the locations of all
+     * actors of given class (for unbounded worlds, where actors can be outside world).
+     */
+    private long getActorsCoverRadius(int aX, int aY, Class<?> aClass)
+    {
+        // Get rect that holds world and actor locations
+        int minX = 0, minY = 0, maxX = _width - 1, maxY = _height - 1;
+        List<Actor> actors = borrowActorList();
+        _actorRegistry.getActors(aClass, actors);
+        for (int i = 0, iMax = actors.size(); i < iMax; i++) {
+            Actor actor = actors.get(i);
+            minX = Math.min(minX, actor.getX());
+            minY = Math.min(minY, actor.getY());
+            maxX = Math.max(maxX, actor.getX());
+            maxY = Math.max(maxY, actor.getY());
+        }
+        returnActorList(actors);
+
+        // Return radius for rect
+        return getCoverRadius(aX, aY, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns the radius of the circle around given location that holds given rect (distance to farthest corner).
+     */
+    private static long getCoverRadius(int aX, int aY, int aMinX, int aMinY, int aMaxX, int aMaxY)
+    {
+        long dx = Math.max(Math.abs((long) aX - aMinX), Math.abs((long) aMaxX - aX));
+        long dy = Math.max(Math.abs((long) aY - aMinY), Math.abs((long) aMaxY - aY));
+        return (long) Math.ceil(Math.sqrt((double) (dx * dx + dy * dy)));
+    }
+
+    /**
+     * Returns the first actor of given class hit by the bounds rect of given actor moving by given offset in world
+     * pixels (actors it overlaps at start are ignored). The hit actor query distance is set to fraction of move.
+     */
+    protected Actor getActorHitBySweep(Actor anActor, double aDX, double aDY, Class<?> aClass)
+    {
+        // Get actor bounds rect at start
+        double[] boundsRect = _boundsRect;
+        anActor.getBoundsRectInWorld(boundsRect);
+        double minX = boundsRect[0], minY = boundsRect[1];
+        double maxX = boundsRect[2], maxY = boundsRect[3];
+
+        // Get candidate actors for rect that encloses bounds rect at start and end
+        int layerMask = anActor.getLayerMask();
+        ActorType classType = aClass != null ? ActorType.get(aClass) : null;
+        List<Actor> candidates = borrowActorList();
+        _spatialIndex.getActorsInRect(minX + Math.min(aDX, 0), minY + Math.min(aDY, 0),
+            maxX + Math.max(aDX, 0), maxY + Math.max(aDY, 0), layerMask, candidates);
+        Actor hitActor = null;
+        double hitFraction = Double.POSITIVE_INFINITY;
+
+        // Iterate over candidates and find earliest hit
+        for (int i = 0, iMax = candidates.size(); i < iMax; i++) {
+
+            // If actor not in layer mask, or is given actor, or not class, skip
+            Actor otherActor = candidates.get(i);
+            if ((otherActor.getLayers() & layerMask) == 0 || otherActor == anActor || classType != null && !otherActor._actorType.isInstanceOf(classType))
+                continue;
+
+            // Get move fractions where bounds rects start and stop overlapping in x and in y (edges touching isn't overlap)
+            otherActor.getBoundsRectInWorld(boundsRect);
+            double entryX, exitX, entryY, exitY;
+            if (aDX == 0) {
+                if (maxX <= boundsRect[0] || minX >= boundsRect[2])
+                    continue;
+                entryX = Double.NEGATIVE_INFINITY;
+                exitX = Double.POSITIVE_INFINITY;
+            }
+            else {
+                double t1 = (boundsRect[0] - maxX) / aDX, t2 = (boundsRect[2] - minX) / aDX;
+                entryX = Math.min(t1, t2);
+                exitX = Math.max(t1, t2);
+            }
+            if (aDY == 0) {
+                if (maxY <= boundsRect[1] || minY >= boundsRect[3])
+                    continue;
+                entryY = Double.NEGATIVE_INFINITY;
+                exitY = Double.POSITIVE_INFINITY;
+            }
+            else {
+                double t1 = (boundsRect[1] - maxY) / aDY, t2 = (boundsRect[3] - minY) / aDY;
+                entryY = Math.min(t1, t2);
+                exitY = Math.max(t1, t2);
+            }
+
+            // If rects overlap during move (and not at start), and hit is earliest (or same and earlier in world), set hit
+            double entry = Math.max(entryX, entryY), exit = Math.min(exitX, exitY);
+            if (entry >= exit || entry < 0 || entry > 1)
+                continue;
+            if (entry < hitFraction || entry == hitFraction && otherActor._worldOrder < hitActor._worldOrder) {
+                hitActor = otherActor;
+                hitFraction = entry;
+            }
+        }
+
+        // Return candidates list, set hit fraction and return hit actor
+        returnActorList(candidates);
+        if (hitActor != null)
+            hitActor._queryDistance = hitFraction;
+        return hitActor;
+    }
+
+    /**
+     * Returns a reusable actor list. Lists are borrowed and returned in stack order, so queries can be nested.
+     */
+    private List<Actor> borrowActorList()
+    {
+        checkNotParallelActing();
+        if (_actorListCount == _actorLists.size())
+            _actorLists.add(new ArrayList<>());
+        return _actorLists.get(_actorListCount++);
+    }
+
+    /**
+     * Throws if parallel actors are acting (world queries use shared lists and caches that aren't thread-safe).
+     */
+    private void checkNotParallelActing()
+    {
+        if (isParallelActing())
+            throw new IllegalStateException("World queries aren't allowed while parallel actors act");
+    }
+
+    /**
+     * Returns the last borrowed actor list.
+     */
+    private void returnActorList(List<Actor> aList)
+    {
+        aList.clear();
+        _actorListCount--;
+    }
+
+    /**
+     * Creates a spatial index for given type.
+     */
+    private SpatialIndex createSpatialIndex(IndexType anIndexType)
+    {
+        switch (anIndexType) {
+            case Tree: return new AABBTree();
+            case Linear: return new LinearIndex(_worldView);
+            default: return new SpatialHash(_width * _cellSize, _height * _cellSize, Math.max(_cellSize, SPATIAL_HASH_GRID_SIZE));
+        }
+    }
+
+    /**
+     * Called when an actor location, rotation or image changes to update spatial index.
+     */
+    void actorBoundsChanged(Actor anActor)
+    {
+        if (_parallelAct != null && _parallelAct.deferActorChanged(anActor))
+            return;
+        _spatialIndex.updateActor(anActor);
+        if (_cellIndex != null)
+            _cellIndex.updateActor(anActor);
+        if (_queryCache != null)
+            _queryCache.actorChanged(anActor);
+        if (_contactSet != null)
+            _contactSet.actorChanged(anActor);
+    }
+
+    /**
+     * Called when an actor collision layers change to update spatial index.
+     */
+    void actorLayersChanged(Actor anActor)
+    {
+        if (_parallelAct != null && _parallelAct.deferActorChanged(anActor))
+            return;
+        _spatialIndex.updateActor(anActor);
+        if (_queryCache != null)
+            _queryCache.actorChanged(anActor);
+        if (_contactSet != null)
+            _contactSet.actorChanged(anActor);
+    }
+
+    /**
+     * Called when a tag is added to an actor to update tag index.
+     */
+    void actorTagAdded(Actor anActor, String aTag)
+    {
+        if (_parallelAct != null && _parallelAct.deferTagChanged(anActor, aTag, true))
+            return;
+        _tagIndex.addActorTag(anActor, aTag);
+    }
+
+    /**
+     * Called when a tag is removed from an actor to update tag index.
+     */
+    void actorTagRemoved(Actor anActor, String aTag)
+    {
+        if (_parallelAct != null && _parallelAct.deferTagChanged(anActor, aTag, false))
+            return;
+        _tagIndex.removeActorTag(anActor, aTag);
     }
 
     /**
-     * Return actor for given view.
+     * Called when an actor precise collision, collider, layer mask or collision mask changes.
      */
-    private static Actor getActorForView(View aView)
+    void actorCollisionChanged(Actor anActor)
     {
-        ActorView gfsa = aView instanceof ActorView ? (ActorView) aView : null;
-        return gfsa != null ? gfsa._actor : null;
+        if (_parallelAct != null && _parallelAct.deferActorChanged(anActor))
+            return;
+        if (_queryCache != null)
+            _queryCache.actorChanged(anActor);
+        if (_contactSet != null)
+            _contactSet.actorChanged(anActor);
     }
 }
\ No newline at end of file
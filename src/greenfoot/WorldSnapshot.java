@@ -0,0 +1,233 @@
+package greenfoot;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An immutable view of the actors in a World for batch queries: actor bounds in a uniform grid, built once so that
+ * queries for many actors can run on several threads at once without the world spatial index (which marks actors
+ * as it visits them). Building a snapshot updates actor collision caches, so intersection tests only read actors.
+ */
+class WorldSnapshot {
+
+    // The world
+    private World _world;
+
+    // The actors (in world order)
+    private Actor[] _actors;
+
+    // The actor bounds rects (min x, min y, max x, max y for each actor)
+    private double[] _bounds;
+
+    // The grid origin and cell size
+    private double _gridX, _gridY, _gridCellSize;
+
+    // The number of grid columns and rows
+    private int _colCount, _rowCount;
+
+    // The start of each grid cell in cell actors (with end of last cell), and the actor indexes for all cells
+    private int[] _cellStarts, _cellActors;
+
+    // The most grid columns or rows (cell size grows for worlds with actors spread far apart)
+    private static final int MAX_GRID_SIDE = 1024;
+
+    // The smallest batch of query actors that is split across the fork-join pool (smaller batches run in caller thread)
+    static final int MIN_PARALLEL_COUNT = 1024;
+
+    // The number of query actors below which a parallel task stops splitting
+    private static final int TASK_SIZE = 256;
+
+    /**
+     * Constructor for given world, world actors (in world order) and grid cell size.
+     */
+    public WorldSnapshot(World aWorld, List<Actor> theActors, double aCellSize)
+    {
+        // Get actors and whether any use precise collision (then all need masks)
+        _world = aWorld;
+        _actors = theActors.toArray(new Actor[0]);
+        int actorCount = _actors.length;
+        boolean anyPrecise = false;
+        for (Actor actor : _actors)
+            anyPrecise |= actor.isPreciseCollision();
+
+        // Update actor collision caches and get bounds and extents
+        _bounds = new double[actorCount * 4];
+        double[] bounds = new double[4];
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for (int i = 0; i < actorCount; i++) {
+            Actor actor = _actors[i];
+            actor.updateCollisionCaches(anyPrecise);
+            actor.getBoundsRectInWorld(bounds);
+            System.arraycopy(bounds, 0, _bounds, i * 4, 4);
+            minX = i == 0 ? bounds[0] : Math.min(minX, bounds[0]);
+            minY = i == 0 ? bounds[1] : Math.min(minY, bounds[1]);
+            maxX = i == 0 ? bounds[2] : Math.max(maxX, bounds[2]);
+            maxY = i == 0 ? bounds[3] : Math.max(maxY, bounds[3]);
+        }
+
+        // Get grid for extents (growing cell size until grid fits max side)
+        double cellSize = aCellSize;
+        while ((maxX - minX) / cellSize >= MAX_GRID_SIDE || (maxY - minY) / cellSize >= MAX_GRID_SIDE)
+            cellSize *= 2;
+        _gridX = minX;
+        _gridY = minY;
+        _gridCellSize = cellSize;
+        _colCount = (int) ((maxX - minX) / cellSize) + 1;
+        _rowCount = (int) ((maxY - minY) / cellSize) + 1;
+
+        // Count actors in each cell (at next cell start), then sum counts to get cell starts
+        int[] cellStarts = _cellStarts = new int[_colCount * _rowCount + 1];
+        for (int i = 0; i < actorCount; i++) {
+            int col0 = getCol(_bounds[i * 4]), row0 = getRow(_bounds[i * 4 + 1]);
+            int col1 = getCol(_bounds[i * 4 + 2]), row1 = getRow(_bounds[i * 4 + 3]);
+            for (int row = row0; row <= row1; row++)
+                for (int col = col0; col <= col1; col++)
+                    cellStarts[row * _colCount + col + 1]++;
+        }
+        for (int i = 1; i < cellStarts.length; i++)
+            cellStarts[i] += cellStarts[i - 1];
+
+        // Add actor indexes to cells (in world order)
+        _cellActors = new int[cellStarts[cellStarts.length - 1]];
+        int[] cellEnds = new int[cellStarts.length - 1];
+        System.arraycopy(cellStarts, 0, cellEnds, 0, cellEnds.length);
+        for (int i = 0; i < actorCount; i++) {
+            int col0 = getCol(_bounds[i * 4]), row0 = getRow(_bounds[i * 4 + 1]);
+            int col1 = getCol(_bounds[i * 4 + 2]), row1 = getRow(_bounds[i * 4 + 3]);
+            for (int row = row0; row <= row1; row++)
+                for (int col = col0; col <= col1; col++)
+                    _cellActors[cellEnds[row * _colCount + col]++] = i;
+        }
+    }
+
+    /**
+     * Sets a list of the actors of given class type (null for any) intersecting each given actor, in world order, in
+     * given hit lists array. Batches of at least MIN_PARALLEL_COUNT actors are split across the common fork-join pool.
+     */
+    public void findIntersectingActors(Actor[] theActors, ActorType aType, List<Actor>[] theHits)
+    {
+        if (theActors.length < MIN_PARALLEL_COUNT)
+            findIntersectingActors(theActors, aType, theHits, 0, theActors.length);
+        else ForkJoinPool.commonPool().invoke(new IntersectingTask(theActors, aType, theHits, 0, theActors.length));
+    }
+
+    /**
+     * Sets a list of intersecting actors for given range of given actors in given hit lists array.
+     */
+    private void findIntersectingActors(Actor[] theActors, ActorType aType, List<Actor>[] theHits, int aStart, int anEnd)
+    {
+        for (int i = aStart; i < anEnd; i++) {
+            List<Actor> hits = new ArrayList<>();
+            if (theActors[i]._world == _world)
+                findIntersectingActors(theActors[i], aType, hits);
+            theHits[i] = hits;
+        }
+    }
+
+    /**
+     * Adds the actors of given class type (null for any) intersecting given actor to given list, in world order.
+     */
+    private void findIntersectingActors(Actor anActor, ActorType aType, List<Actor> theHits)
+    {
+        // Get actor bounds and grid cell range
+        double[] bounds = new double[4];
+        anActor.getBoundsRectInWorld(bounds);
+        int col0 = getCol(bounds[0]), row0 = getRow(bounds[1]);
+        int col1 = getCol(bounds[2]), row1 = getRow(bounds[3]);
+        int layerMask = anActor.getLayerMask();
+
+        // Iterate over actors in cell range
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cellIndex = row * _colCount + col;
+                for (int i = _cellStarts[cellIndex], iMax = _cellStarts[cellIndex + 1]; i < iMax; i++) {
+
+                    // If actor not in layer mask, or is given actor, or not class, skip
+                    int actorIndex = _cellActors[i];
+                    Actor otherActor = _actors[actorIndex];
+                    if ((otherActor.getLayers() & layerMask) == 0 || otherActor == anActor)
+                        continue;
+                    if (aType != null && !otherActor._actorType.isInstanceOf(aType))
+                        continue;
+
+                    // If bounds rects don't intersect, skip
+                    int boundsIndex = actorIndex * 4;
+                    double minX = _bounds[boundsIndex], minY = _bounds[boundsIndex + 1];
+                    if (minX > bounds[2] || _bounds[boundsIndex + 2] < bounds[0] || minY > bounds[3] || _bounds[boundsIndex + 3] < bounds[1])
+                        continue;
+
+                    // If not the cell of the bounds overlap min corner, skip (so actors in many cells are tested once)
+                    if (getCol(Math.max(minX, bounds[0])) != col || getRow(Math.max(minY, bounds[1])) != row)
+                        continue;
+
+                    // If actor bounds and masks intersect, add hit
+                    if (anActor.isBoundsIntersecting(otherActor) && anActor.isMaskIntersecting(otherActor))
+                        theHits.add(otherActor);
+                }
+            }
+        }
+
+        // Sort hits in world order
+        theHits.sort(Actor.WORLD_ORDER_COMPARATOR);
+    }
+
+    /**
+     * Returns the grid column for given x (clamped to grid).
+     */
+    private int getCol(double aX)
+    {
+        int col = (int) Math.floor((aX - _gridX) / _gridCellSize);
+        return col < 0 ? 0 : col >= _colCount ? _colCount - 1 : col;
+    }
+
+    /**
+     * Returns the grid row for given y (clamped to grid).
+     */
+    private int getRow(double aY)
+    {
+        int row = (int) Math.floor((aY - _gridY) / _gridCellSize);
+        return row < 0 ? 0 : row >= _rowCount ? _rowCount - 1 : row;
+    }
+
+    /**
+     * A fork-join task to find intersecting actors for a range of query actors, split in halves until small.
+     */
+    private class IntersectingTask extends RecursiveAction {
+
+        // The query actors, class type and hit lists array
+        private Actor[] _queryActors;
+        private ActorType _type;
+        private List<Actor>[] _hits;
+
+        // The range of query actors
+        private int _start, _end;
+
+        /**
+         * Constructor.
+         */
+        IntersectingTask(Actor[] theActors, ActorType aType, List<Actor>[] theHits, int aStart, int anEnd)
+        {
+            _queryActors = theActors;
+            _type = aType;
+            _hits = theHits;
+            _start = aStart;
+            _end = anEnd;
+        }
+
+        /**
+         * Override to find hits for range, or split range.
+         */
+        @Override
+        protected void compute()
+        {
+            if (_end - _start <= TASK_SIZE) {
+                findIntersectingActors(_queryActors, _type, _hits, _start, _end);
+                return;
+            }
+            int mid = (_start + _end) >>> 1;
+            invokeAll(new IntersectingTask(_queryActors, _type, _hits, _start, mid),
+                new IntersectingTask(_queryActors, _type, _hits, mid, _end));
+        }
+    }
+}
@@ -32,6 +32,9 @@ public class WorldView extends ChildView {
     // The children in paint order
     private Class<?>[] _paintOrderClasses;
 
+    // The actor types for paint order classes
+    private ActorType[] _paintOrderTypes;
+
     // The children in paint order
     private View[] _childrenInPaintOrder;
 
@@ -182,6 +185,12 @@ public class WorldView extends ChildView {
     public void setPaintOrder(Class<?>... theClasses)
     {
         _paintOrderClasses = theClasses != null && theClasses.length > 0 ? theClasses : null;
+        _paintOrderTypes = null;
+        if (_paintOrderClasses != null) {
+            _paintOrderTypes = new ActorType[_paintOrderClasses.length];
+            for (int i = 0; i < _paintOrderClasses.length; i++)
+                _paintOrderTypes[i] = ActorType.get(_paintOrderClasses[i]);
+        }
         _childrenInPaintOrder = null;
     }
 
@@ -197,8 +206,19 @@ public class WorldView extends ChildView {
 
         // If childrenInPaintOrder not set, set
         if (_childrenInPaintOrder == null) {
-            _childrenInPaintOrder = getChildrenArray().clone();
-            Arrays.sort(_childrenInPaintOrder, (o1,o2) -> Integer.compare(getPaintRanking(o1), getPaintRanking(o2)));
+
+            // Get sort keys of ranking (shifted to be non-negative) and child index, so each ranking is found once
+            View[] children = getChildrenArray();
+            long[] sortKeys = new long[children.length];
+            for (int i = 0; i < children.length; i++)
+                sortKeys[i] = (long) (getPaintRanking(children[i]) + 1) << 32 | i;
+            Arrays.sort(sortKeys);
+
+            // Get children in ranking order (child order for same ranking)
+            View[] childrenInPaintOrder = new View[children.length];
+            for (int i = 0; i < children.length; i++)
+                childrenInPaintOrder[i] = children[(int) sortKeys[i]];
+            _childrenInPaintOrder = childrenInPaintOrder;
         }
 
         // Return
@@ -217,10 +237,10 @@ public class WorldView extends ChildView {
 
         // Iterate over paint order classes and if actor is instance of class, return opposite index
         // Iterate backwards, in case Actor.class is specified first? Dunno, probably still some problems
-        for (int i = _paintOrderClasses.length - 1; i >= 0; i--) {
-            Class<?> cls = _paintOrderClasses[i];
-            if (cls.isInstance(actor)) // Return opposite index to make it ranking instead of index
-                return _paintOrderClasses.length - i;
+        for (int i = _paintOrderTypes.length - 1; i >= 0; i--) {
+            ActorType type = _paintOrderTypes[i];
+            if (actor._actorType.isInstanceOf(type)) // Return opposite index to make it ranking instead of index
+                return _paintOrderTypes.length - i;
         }
 
         // Return no ranking
@@ -247,15 +267,34 @@ public class WorldView extends ChildView {
         finally { _childrenInPaintOrder = null; }
     }
 
+    /**
+     * Removes the views of actors marked batch remove, found in one scan of children (from the end, so indexes of
+     * children still to remove don't change).
+     */
+    void removeBatchRemoveChildren()
+    {
+        View[] children = getChildrenArray();
+        for (int i = children.length - 1; i >= 0; i--) {
+            View child = children[i];
+            if (child instanceof ActorView && ((ActorView) child)._actor._batchRemove)
+                removeChild(i);
+        }
+    }
+
     /**
      * Calls the act method and actors act methods.
      */
     void doAct()
     {
         try {
-            _world.act();
-            for (View child : getChildrenArray())
-                ((ActorView) child)._actor.act();
+            _world.startQueryCacheCycle();
+            _world.startActPhase();
+            try {
+                _world.act();
+                _world.updateTouchingPairs();
+                _world.actActors();
+            }
+            finally { _world.endActPhase(); }
             _mouseClicked = null;
             _keyClicks.clear();
         }